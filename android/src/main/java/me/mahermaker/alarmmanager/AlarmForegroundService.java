@@ -7,144 +7,670 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.os.PowerManager;
+import android.os.Looper;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.provider.Settings;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Owns the ringing alarms: posts the foreground notification, launches the ringing screen and plays
+ * sound and vibration itself, so audio starts as soon as the service runs even if the full-screen
+ * activity is delayed or suppressed. Alarms that fire while others ring join a queue and share the
+ * sound already playing; AlarmRingingActivity binds to page through them and end them one by one.
+ */
 public class AlarmForegroundService extends Service {
     private static final String TAG = "AlarmForegroundService";
     public static final String ACTION_SHOW_ALARM = "me.mahermaker.alarmmanager.ACTION_SHOW_ALARM";
+    public static final String ACTION_DISMISS_ALARM = "me.mahermaker.alarmmanager.ACTION_DISMISS_ALARM";
+    public static final String EXTRA_SELECT = "select"; // Activity should switch to this alarm, not just queue it
     public static final int SERVICE_NOTIFICATION_ID = 2; // Changed from private to public
-    private PowerManager.WakeLock wakeLock;
+    private static final int FULL_SCREEN_REQUEST_CODE = 300;
+    private static final int FIRST_ALARM_NOTIFICATION_ID = 1000; // Per-alarm notifications in the ringing group
+    private static final int MAX_ALARM_NOTIFICATIONS = 8; // Beyond this the summary counts the rest
+    private static final long RING_TIMEOUT_LOCK_MARGIN_MS = 10 * 1000L; // Keeps the CPU up until the timeout has run
+    private static final String RINGING_GROUP = "me.mahermaker.alarmmanager.RINGING";
+    private static final long[] VIBRATION_PATTERN = {0, 500, 1000}; // Off, On, Off, On...
+    private static final long MAX_RING_LOCK_MS = 10 * 60 * 1000L; // Wake lock cap for alarms without a ring timeout
+    private static final long CRITICAL_RING_LOCK_MS = 30 * 60 * 1000L; // Per-priority wake lock caps
+    private static final long BACKGROUND_RING_LOCK_MS = 60 * 1000L;
+    private static final int MAX_BACKGROUND_RINGING = 1; // Further background alarms only post a notification
+    private static final int NOTIFY_ONLY_NOTIFICATION_ID = SERVICE_NOTIFICATION_ID + 3; // Tagged with the alarm ID
+    private final IBinder binder = new LocalBinder();
+    private static final AudioAttributes ALARM_AUDIO_ATTRIBUTES = new AudioAttributes.Builder()
+            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+            .setUsage(AudioAttributes.USAGE_ALARM)
+            .build();
+    private AudioTrack audioTrack; // Plays sounds pre-decoded by SoundCache
+    private MediaPlayer mediaPlayer; // Used when the sound is not cached yet
+    static final long DEFAULT_PREPARE_TIMEOUT_MS = 500;
+    private static final int TIER_CONFIGURED = 0;
+    private static final int TIER_SYSTEM_DEFAULT = 1;
+    private static final int TIER_BUILTIN_TONE = 2;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int soundTier; // Fallback tier currently preparing or playing
+    private long prepareTimeoutMs = DEFAULT_PREPARE_TIMEOUT_MS;
+    private final Runnable prepareWatchdog = () -> {
+        Log.w(TAG, "MediaPlayer did not prepare within " + prepareTimeoutMs + " ms, escalating.");
+        playTier(soundTier + 1);
+    };
+    private Vibrator vibrator;
+    private String ringingAlarmId; // Alarm whose sound settings are playing: the first of the current session
+    private String ringingSoundUri; // null for the default alarm sound
+    private int soundSource = -1; // FireLatency.SOURCE_* once sound has started or failed, -1 while preparing
+
+    // Ringing queue, oldest first. Only touched on the main thread: service callbacks, the bound
+    // activity and the MediaPlayer/Handler callbacks all run there.
+    private final LinkedHashMap<String, RingingAlarm> ringing = new LinkedHashMap<>();
+    private int nextNotificationId = FIRST_ALARM_NOTIFICATION_ID;
+    private RingingListener ringingListener;
+    private final Runnable refreshNotifications = this::refreshNotifications;
+
+    private static final class RingingAlarm {
+        final String alarmId;
+        final String name;
+        final long at;
+        final String priority;
+        final int notificationId; // Also the request code of its content PendingIntent
+        boolean notificationPosted;
+        boolean firedReported; // alarmFired is sent once per ringing alarm
+        Runnable timeout; // Pending ring timeout, null if the alarm rings until handled
+
+        RingingAlarm(String alarmId, String name, long at, String priority, int notificationId) {
+            this.alarmId = alarmId;
+            this.name = name;
+            this.at = at;
+            this.priority = priority;
+            this.notificationId = notificationId;
+        }
+    }
+
+    /**
+     * Told when an alarm joins the ringing queue while the ringing screen is bound.
+     */
+    public interface RingingListener {
+        void onRingingChanged();
+    }
+
+    /**
+     * Handed to AlarmRingingActivity when it binds.
+     */
+    public class LocalBinder extends Binder {
+        public AlarmForegroundService getService() {
+            return AlarmForegroundService.this;
+        }
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "onCreate");
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (powerManager != null) {
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + "::ServiceWakeLock");
-            wakeLock.setReferenceCounted(false); // Manage wakelock manually
-        }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "onStartCommand received");
         if (intent != null && ACTION_SHOW_ALARM.equals(intent.getAction())) {
-            if (wakeLock != null && !wakeLock.isHeld()) {
-                wakeLock.acquire(10 * 60 * 1000L /* 10 minutes */); // Acquire with timeout
-                Log.d(TAG, "WakeLock acquired");
-            }
-
             String alarmId = intent.getStringExtra("alarmId");
-            String name = intent.getStringExtra("name");
+            FireLatency fireLatency = FireLatency.getInstance(this);
+            fireLatency.mark(alarmId, FireLatency.SERVICE_STARTED);
             long atTime = intent.getLongExtra("at", System.currentTimeMillis());
-            String uiOptionsJson = intent.getStringExtra("uiOptions"); // Retrieve uiOptions
-            // String soundUri = intent.getStringExtra("soundUri"); // Will be used by AlarmRingingActivity
+            AlarmRecord payload = AlarmPayloadStore.getInstance(this).get(alarmId); // Name and sound
+            String name = payload != null ? payload.name : null;
 
             Log.i(TAG, "Processing alarm: ID=" + alarmId + ", Name=" + name);
 
-            // Create notification channel (similar to AlarmReceiver)
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                NotificationChannel channel = new NotificationChannel(AlarmReceiver.ALARM_CHANNEL_ID,
-                        "Alarm Channel", NotificationManager.IMPORTANCE_MAX);
-                channel.setDescription("Channel for alarm notifications");
-                channel.setSound(null, null); // Sound handled by activity
-                channel.enableVibration(false); // Vibration handled by activity
-                channel.setBypassDnd(true);
-                NotificationManager notificationManager = getSystemService(NotificationManager.class);
-                if (notificationManager != null) {
-                    notificationManager.createNotificationChannel(channel);
-                }
+            if (ringing.containsKey(alarmId)) {
+                Log.w(TAG, "Alarm " + alarmId + " is already ringing, ignoring duplicate delivery.");
+                return START_NOT_STICKY;
             }
-
-            // Intent to start AlarmRingingActivity
-            Intent activityIntent = new Intent(this, AlarmRingingActivity.class);
-            activityIntent.putExtra("alarmId", alarmId);
-            activityIntent.putExtra("name", name);
-            activityIntent.putExtra("at", atTime);
-            if (uiOptionsJson != null) {
-                activityIntent.putExtra("uiOptions", uiOptionsJson); // Forward uiOptions to Activity
+            String priority = payload != null && payload.priority != null ? payload.priority : AlarmRecord.PRIORITY_STANDARD;
+            if (countRinging(priority) >= maxRinging(priority)) {
+                // Never reached for the first alarm, so the service is already in the foreground here
+                postQuietly(alarmId, name);
+                return START_NOT_STICKY;
             }
-            // activityIntent.putExtra("soundUri", soundUri);
-            activityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-
-            PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(this,
-                    300, // Unique request code
-                    activityIntent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0));
+            RingingAlarm alarm = new RingingAlarm(alarmId, name, atTime, priority, nextNotificationId++);
+            ringing.put(alarmId, alarm);
+            long ringTimeoutMs = payload != null ? payload.ringTimeoutMs : 0;
+            long lockMs = ringTimeoutMs > 0 ? ringTimeoutMs + RING_TIMEOUT_LOCK_MARGIN_MS : MAX_RING_LOCK_MS;
+            // Takes over the lock AlarmReceiver acquired for this alarm; released once it is visible, audible or ended
+            WakeLockManager.getInstance(this).acquire(WakeLockManager.ALARM, alarmId, Math.min(lockMs, ringLockBudget(priority)));
+            if (ringTimeoutMs > 0) {
+                boolean snooze = AlarmRecord.TIMEOUT_SNOOZE.equals(payload.timeoutAction);
+                alarm.timeout = () -> onRingTimeout(alarm, snooze);
+                handler.postDelayed(alarm.timeout, ringTimeoutMs);
+            }
+            boolean first = ringing.size() == 1;
 
-            Notification notification = new NotificationCompat.Builder(this, AlarmReceiver.ALARM_CHANNEL_ID)
-                    .setSmallIcon(android.R.drawable.ic_lock_idle_alarm) // Replace with your app icon
-                    .setContentTitle(name != null ? name : "Alarm")
-                    .setContentText("Alarm is active.")
-                    .setPriority(NotificationCompat.PRIORITY_MAX)
-                    .setCategory(NotificationCompat.CATEGORY_ALARM)
-                    .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                    .setFullScreenIntent(fullScreenPendingIntent, true)
-                    .setOngoing(true) // Foreground service notifications are typically ongoing
-                    .build();
+            if (first) {
+                createAlarmChannel(this);
+            }
 
             // Start foreground service with the notification
             // For Android 14+ (API 34), foregroundServiceType must be specified in manifest
             // For Android Q (API 29) to 13 (API 33), foregroundServiceType in startForeground
             // For older, just startForeground.
             try {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    // Type will be inferred from manifest for API 34+
-                    // For 29-33, if specific types are needed, they can be added here.
-                    // However, for alarms, the manifest declaration is key.
-                    startForeground(SERVICE_NOTIFICATION_ID, notification);
+                if (first) {
+                    startForeground(SERVICE_NOTIFICATION_ID, buildSummaryNotification());
+                    Log.d(TAG, "Service started in foreground.");
                 } else {
-                    startForeground(SERVICE_NOTIFICATION_ID, notification);
-                }
-                Log.d(TAG, "Service started in foreground.");
-
-                // Attempt to launch the full-screen activity directly
-                // This is the crucial part - will the foreground service have enough privilege?
-                try {
-                    Log.d(TAG, "Attempting to send fullScreenPendingIntent directly.");
-                    fullScreenPendingIntent.send();
-                } catch (PendingIntent.CanceledException e) {
-                    Log.e(TAG, "fullScreenPendingIntent was canceled", e);
+                    scheduleNotificationRefresh(); // Bursts are coalesced into one notification update
                 }
+                fireLatency.mark(alarmId, FireLatency.FOREGROUND);
+
+                if (first) {
+                    // Sound starts here rather than in the activity, so it doesn't wait for the activity launch
+                    startSoundAndVibration(alarmId, payload);
+                } else if (soundSource >= 0) {
+                    reportFired(alarm); // Joins the sound that is already playing; audio is not restarted
+                } // Otherwise reported together with the first alarm once its sound starts
 
+                if (ringingListener != null) {
+                    ringingListener.onRingingChanged(); // The ringing screen is up, it pages to the new alarm itself
+                } else {
+                    // Attempt to launch the full-screen activity directly
+                    // This is the crucial part - will the foreground service have enough privilege?
+                    try {
+                        Log.d(TAG, "Attempting to send fullScreenPendingIntent directly.");
+                        activityPendingIntent(alarm, FULL_SCREEN_REQUEST_CODE, false).send();
+                    } catch (PendingIntent.CanceledException e) {
+                        Log.e(TAG, "fullScreenPendingIntent was canceled", e);
+                    }
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error starting foreground service or sending intent", e);
             }
 
-
-            // The service should stop itself after the alarm activity is launched or if it fails.
-            // However, AlarmRingingActivity will be responsible for the user interaction.
-            // We can stop this service once AlarmRingingActivity is up.
-            // For now, let it run until explicitly stopped or AlarmRingingActivity handles it.
-            // Consider adding a timeout to stopSelf if AlarmRingingActivity doesn't launch.
+            // The service stays up while any alarm is ringing; AlarmRingingActivity ends them one by one
+            // through dismiss(), and the service stops itself once the queue is empty.
+        } else if (intent != null && ACTION_DISMISS_ALARM.equals(intent.getAction())) {
+            dismiss(intent.getStringExtra("alarmId"));
         } else {
-            Log.w(TAG, "Service started with unexpected intent or null action. Stopping.");
-            stopSelf();
+            Log.w(TAG, "Service started with unexpected intent or null action.");
+            if (ringing.isEmpty()) {
+                stopSelf();
+            }
         }
         // If the service is killed, it will not be restarted unless there are pending intents.
         return START_NOT_STICKY;
     }
 
+    /**
+     * @return IDs of the alarms currently ringing, oldest first.
+     */
+    public List<String> getRingingAlarmIds() {
+        return new ArrayList<>(ringing.keySet());
+    }
+
+    public boolean isRinging(String alarmId) {
+        return ringing.containsKey(alarmId);
+    }
+
+    /**
+     * Registers the bound ringing screen to hear about alarms joining the queue; null to unregister.
+     */
+    public void setRingingListener(RingingListener listener) {
+        this.ringingListener = listener;
+    }
+
+    /**
+     * Ends one ringing alarm (dismissed or snoozed). Sound keeps playing for the others; once the
+     * last one is gone sound and vibration stop and the service stops itself.
+     * @return the number of alarms still ringing.
+     */
+    public int dismiss(String alarmId) {
+        RingingAlarm alarm = ringing.remove(alarmId);
+        if (alarm != null) {
+            cancelAlarmNotification(alarm);
+            if (alarm.timeout != null) {
+                handler.removeCallbacks(alarm.timeout);
+            }
+            WakeLockManager.getInstance(this).release(WakeLockManager.ALARM, alarmId);
+            Log.d(TAG, "Alarm " + alarmId + " left the ringing queue, " + ringing.size() + " remaining.");
+        }
+        if (ringing.isEmpty()) {
+            stopSoundAndVibration();
+            stopSelf();
+            return 0;
+        }
+        scheduleNotificationRefresh();
+        if (ringingListener == null) {
+            // Ended from outside the ringing screen, bring it back for the next alarm
+            try {
+                activityPendingIntent(ringing.values().iterator().next(), FULL_SCREEN_REQUEST_CODE, false).send();
+            } catch (PendingIntent.CanceledException e) {
+                Log.e(TAG, "fullScreenPendingIntent was canceled", e);
+            }
+        }
+        return ringing.size();
+    }
+
+    // Nobody handled the alarm within its ringTimeoutMs: snooze or dismiss it as configured
+    private void onRingTimeout(RingingAlarm alarm, boolean snooze) {
+        if (ringing.get(alarm.alarmId) != alarm) {
+            return;
+        }
+        Log.i(TAG, "Alarm " + alarm.alarmId + " rang unattended until its timeout, " + (snooze ? "snoozing." : "dismissing."));
+        if (snooze) {
+            AlarmSnoozer.schedule(this, alarm.alarmId, alarm.name);
+        } else {
+            AlarmPayloadStore.getInstance(this).release(alarm.alarmId);
+        }
+        ManagerPlugin.notifyAlarmEvent(this, snooze ? "alarmSnoozed" : "alarmDismissed", alarm.alarmId, alarm.name, null, true);
+        dismiss(alarm.alarmId);
+        if (ringingListener != null) {
+            ringingListener.onRingingChanged(); // The ringing screen moves on (or closes) by itself
+        }
+    }
+
+    // Wake lock budget of a firing alarm by priority; critical alarms may keep the CPU up longest
+    private static long ringLockBudget(String priority) {
+        if (AlarmRecord.PRIORITY_CRITICAL.equals(priority)) {
+            return CRITICAL_RING_LOCK_MS;
+        }
+        return AlarmRecord.PRIORITY_BACKGROUND.equals(priority) ? BACKGROUND_RING_LOCK_MS : MAX_RING_LOCK_MS;
+    }
+
+    // How many alarms of a priority may ring at once; only background alarms are limited
+    private static int maxRinging(String priority) {
+        return AlarmRecord.PRIORITY_BACKGROUND.equals(priority) ? MAX_BACKGROUND_RINGING : Integer.MAX_VALUE;
+    }
+
+    private int countRinging(String priority) {
+        int count = 0;
+        for (RingingAlarm alarm : ringing.values()) {
+            if (alarm.priority.equals(priority)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Over its priority's ringing budget: shown as a silent notification instead of joining the ringing queue
+    private void postQuietly(String alarmId, String name) {
+        Log.i(TAG, "Ringing budget reached, posting alarm " + alarmId + " as a notification only.");
+        postNotificationOnly(this, alarmId, name, true);
+    }
+
+    static void createAlarmChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(AlarmReceiver.ALARM_CHANNEL_ID,
+                "Alarm Channel", NotificationManager.IMPORTANCE_MAX);
+        channel.setDescription("Channel for alarm notifications");
+        channel.setSound(null, null); // Sound played by this service
+        channel.enableVibration(false); // Vibration driven by this service
+        channel.setBypassDnd(true);
+        NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+
+    /**
+     * Delivers an alarm as a plain notification, without ringing: used when its ringing budget is
+     * used up, and by AlarmReceiver when the OS does not let it start this service. Completes the
+     * alarm as ringing would: its wake lock and payload are released and alarmFired is reported.
+     */
+    static void postNotificationOnly(Context context, String alarmId, String name, boolean silent) {
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            createAlarmChannel(context);
+            Intent mainAppIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+            PendingIntent contentIntent = null;
+            if (mainAppIntent != null) {
+                mainAppIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+                contentIntent = PendingIntent.getActivity(context, NOTIFY_ONLY_NOTIFICATION_ID + 100, mainAppIntent,
+                        PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0));
+            }
+            notificationManager.notify(alarmId, NOTIFY_ONLY_NOTIFICATION_ID, new NotificationCompat.Builder(context, AlarmReceiver.ALARM_CHANNEL_ID)
+                    .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                    .setContentTitle(name != null ? name : "Alarm")
+                    .setPriority(silent ? NotificationCompat.PRIORITY_DEFAULT : NotificationCompat.PRIORITY_MAX)
+                    .setCategory(NotificationCompat.CATEGORY_ALARM)
+                    .setContentIntent(contentIntent)
+                    .setAutoCancel(true)
+                    .setSilent(silent)
+                    .build());
+        }
+        WakeLockManager.getInstance(context).release(WakeLockManager.ALARM, alarmId);
+        AlarmPayloadStore.getInstance(context).release(alarmId);
+        FireLatency fireLatency = FireLatency.getInstance(context);
+        fireLatency.setSoundSource(alarmId, FireLatency.SOURCE_NONE);
+        ManagerPlugin.notifyAlarmEvent(context, "alarmFired", alarmId, name, fireLatency.finish(alarmId), false);
+    }
+
+    private PendingIntent activityPendingIntent(RingingAlarm alarm, int requestCode, boolean select) {
+        Intent activityIntent = new Intent(this, AlarmRingingActivity.class);
+        activityIntent.putExtra("alarmId", alarm.alarmId); // Activity reads name and uiOptions from AlarmPayloadStore
+        activityIntent.putExtra("at", alarm.at);
+        activityIntent.putExtra(EXTRA_SELECT, select);
+        activityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return PendingIntent.getActivity(this,
+                requestCode,
+                activityIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0));
+    }
+
+    private static String displayName(RingingAlarm alarm) {
+        return alarm.name != null ? alarm.name : "Alarm";
+    }
+
+    // The foreground notification. With several alarms ringing it becomes the summary of their group
+    private Notification buildSummaryNotification() {
+        RingingAlarm head = ringing.values().iterator().next();
+        int count = ringing.size();
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, AlarmReceiver.ALARM_CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm) // Replace with your app icon
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setFullScreenIntent(activityPendingIntent(head, FULL_SCREEN_REQUEST_CODE, false), true)
+                .setOnlyAlertOnce(true) // Alarms joining the group update it silently
+                .setOngoing(true); // Foreground service notifications are typically ongoing
+        if (count == 1) {
+            return builder.setContentTitle(displayName(head))
+                    .setContentText("Alarm is active.")
+                    .build();
+        }
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        int lines = 0;
+        for (RingingAlarm alarm : ringing.values()) {
+            if (lines++ == MAX_ALARM_NOTIFICATIONS) {
+                style.setSummaryText("+" + (count - MAX_ALARM_NOTIFICATIONS) + " more");
+                break;
+            }
+            style.addLine(displayName(alarm));
+        }
+        return builder.setContentTitle(count + " alarms ringing")
+                .setContentText(displayName(head) + " and " + (count - 1) + " more")
+                .setStyle(style)
+                .setGroup(RINGING_GROUP)
+                .setGroupSummary(true)
+                .build();
+    }
+
+    private Notification buildAlarmNotification(RingingAlarm alarm) {
+        return new NotificationCompat.Builder(this, AlarmReceiver.ALARM_CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentTitle(displayName(alarm))
+                .setContentText("Alarm is active.")
+                .setWhen(alarm.at)
+                .setShowWhen(true)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setContentIntent(activityPendingIntent(alarm, alarm.notificationId, true)) // Opens the screen on this alarm
+                .setGroup(RINGING_GROUP)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .setSilent(true)
+                .setOngoing(true)
+                .build();
+    }
+
+    private void scheduleNotificationRefresh() {
+        handler.removeCallbacks(refreshNotifications);
+        handler.post(refreshNotifications);
+    }
+
+    // Re-posts the summary and posts (or cancels) per-alarm notifications. Only the first
+    // MAX_ALARM_NOTIFICATIONS alarms get their own, keeping bursts under the notification rate limit.
+    private void refreshNotifications() {
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager == null || ringing.isEmpty()) {
+            return;
+        }
+        notificationManager.notify(SERVICE_NOTIFICATION_ID, buildSummaryNotification());
+        boolean grouped = ringing.size() > 1;
+        int posted = 0;
+        for (RingingAlarm alarm : ringing.values()) {
+            if (grouped && posted++ < MAX_ALARM_NOTIFICATIONS) {
+                if (!alarm.notificationPosted) {
+                    notificationManager.notify(alarm.notificationId, buildAlarmNotification(alarm));
+                    alarm.notificationPosted = true;
+                }
+            } else {
+                cancelAlarmNotification(alarm);
+            }
+        }
+    }
+
+    private void cancelAlarmNotification(RingingAlarm alarm) {
+        if (!alarm.notificationPosted) {
+            return;
+        }
+        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.cancel(alarm.notificationId);
+        }
+        alarm.notificationPosted = false;
+    }
+
+    private void startSoundAndVibration(String alarmId, AlarmRecord payload) {
+        stopSoundAndVibration(); // Nothing should be left over from a previous session, but never play twice
+        ringingAlarmId = alarmId;
+        ringingSoundUri = payload != null ? payload.soundUri : null;
+        prepareTimeoutMs = payload != null && payload.prepareTimeoutMs > 0 ? payload.prepareTimeoutMs : DEFAULT_PREPARE_TIMEOUT_MS;
+        soundSource = -1;
+        Log.d(TAG, "Starting alarm sound and vibration. Sound URI: " + (ringingSoundUri != null ? ringingSoundUri : "default"));
+
+        vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        if (vibrator != null && vibrator.hasVibrator()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                vibrator.vibrate(VibrationEffect.createWaveform(VIBRATION_PATTERN, 0));
+            } else {
+                vibrator.vibrate(VIBRATION_PATTERN, 0);
+            }
+            Log.d(TAG, "Vibration started.");
+        } else {
+            Log.w(TAG, "Vibrator not available or doesn't have vibrator functionality.");
+        }
+
+        SoundCache soundCache = SoundCache.getInstance(this);
+        Uri resolved = SoundCache.resolve(this, payload);
+        if (playPcm(soundCache.get(resolved), FireLatency.SOURCE_CACHED)) {
+            return;
+        }
+        soundCache.prefetch(resolved); // Not decoded yet (or evicted), have it ready for the next alarm
+        playTier(ringingSoundUri != null ? TIER_CONFIGURED : TIER_SYSTEM_DEFAULT);
+    }
+
+    /**
+     * Plays one step of the fallback chain: the alarm's soundUri, then the system default alarm,
+     * then the built-in tone. A MediaPlayer that errors, or does not prepare within
+     * prepareTimeoutMs, moves playback on to the next tier, so time-to-sound stays bounded.
+     */
+    private void playTier(int tier) {
+        handler.removeCallbacks(prepareWatchdog);
+        releaseMediaPlayer();
+        soundTier = tier;
+        if (tier == TIER_BUILTIN_TONE) {
+            if (!playPcm(SoundCache.builtinTone(), FireLatency.SOURCE_BUILTIN_TONE)) {
+                Log.e(TAG, "Built-in tone failed, alarm is ringing without sound.");
+                reportFiredAll(FireLatency.SOURCE_NONE); // No sound at all, still let the app know the alarms fired
+            }
+            return;
+        }
+        Uri uri = tier == TIER_CONFIGURED ? Uri.parse(ringingSoundUri) : Settings.System.DEFAULT_ALARM_ALERT_URI;
+        if (uri == null) {
+            playTier(tier + 1);
+            return;
+        }
+        int source = tier == TIER_CONFIGURED ? FireLatency.SOURCE_CONFIGURED : FireLatency.SOURCE_SYSTEM_DEFAULT;
+        MediaPlayer player = new MediaPlayer();
+        mediaPlayer = player;
+        try {
+            player.setDataSource(this, uri);
+            player.setAudioAttributes(ALARM_AUDIO_ATTRIBUTES);
+            player.setLooping(true);
+            player.setOnPreparedListener(mp -> {
+                if (mp != mediaPlayer) {
+                    return; // Superseded by the watchdog
+                }
+                handler.removeCallbacks(prepareWatchdog);
+                FireLatency.getInstance(this).mark(ringingAlarmId, FireLatency.SOUND_PREPARED);
+                mp.start();
+                reportFiredAll(source);
+                Log.d(TAG, "MediaPlayer prepared and started (" + FireLatency.SOURCE_NAMES[source] + ").");
+            });
+            player.setOnErrorListener((mp, what, extra) -> {
+                Log.e(TAG, "MediaPlayer error: what=" + what + ", extra=" + extra);
+                if (mp == mediaPlayer) {
+                    playTier(tier + 1);
+                }
+                return true;
+            });
+            player.prepareAsync();
+            handler.postDelayed(prepareWatchdog, prepareTimeoutMs);
+        } catch (Exception e) {
+            Log.e(TAG, "Exception setting data source for MediaPlayer: " + e.getMessage(), e);
+            playTier(tier + 1);
+        }
+    }
+
+    /**
+     * Plays a decoded sound through a static AudioTrack looping over the whole buffer. Nothing is
+     * prepared or read from the ringtone provider, so audio starts as soon as the track is built.
+     * @return false if there is no sound or the track could not be created.
+     */
+    private boolean playPcm(SoundCache.Pcm pcm, int source) {
+        if (pcm == null) {
+            return false;
+        }
+        AudioTrack track = null;
+        try {
+            track = new AudioTrack.Builder()
+                    .setAudioAttributes(ALARM_AUDIO_ATTRIBUTES)
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(pcm.sampleRate)
+                            .setChannelMask(pcm.channelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO)
+                            .build())
+                    .setTransferMode(AudioTrack.MODE_STATIC)
+                    .setBufferSizeInBytes(pcm.data.length)
+                    .build();
+            track.write(pcm.data, 0, pcm.data.length);
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                throw new IllegalStateException("AudioTrack not initialized");
+            }
+            track.setLoopPoints(0, pcm.frameCount(), -1); // Loop forever, like MediaPlayer.setLooping(true)
+            FireLatency.getInstance(this).mark(ringingAlarmId, FireLatency.SOUND_PREPARED);
+            track.play();
+            audioTrack = track;
+            reportFiredAll(source);
+            Log.d(TAG, "PCM alarm sound started (" + pcm.sampleRate + " Hz, " + pcm.channelCount + " ch).");
+            return true;
+        } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException e) {
+            Log.e(TAG, "Could not play PCM sound: " + e.getMessage());
+            if (track != null) {
+                track.release();
+            }
+            return false;
+        }
+    }
+
+    // Sound has started (or every fallback failed): every ringing alarm not yet reported gets alarmFired
+    private void reportFiredAll(int source) {
+        soundSource = source;
+        for (RingingAlarm alarm : ringing.values()) {
+            reportFired(alarm);
+        }
+    }
+
+    private void reportFired(RingingAlarm alarm) {
+        if (alarm.firedReported) {
+            return;
+        }
+        alarm.firedReported = true;
+        FireLatency fireLatency = FireLatency.getInstance(this);
+        if (soundSource != FireLatency.SOURCE_NONE) {
+            fireLatency.mark(alarm.alarmId, FireLatency.SOUND_STARTED);
+        }
+        fireLatency.setSoundSource(alarm.alarmId, soundSource);
+        JSObject latency = fireLatency.finish(alarm.alarmId);
+        if (soundSource != FireLatency.SOURCE_NONE) {
+            // Audio playback keeps the device awake from here; a silent alarm keeps its lock until it ends
+            WakeLockManager.getInstance(this).release(WakeLockManager.ALARM, alarm.alarmId);
+        }
+        ManagerPlugin.notifyAlarmEvent(this, "alarmFired", alarm.alarmId, alarm.name, latency, false);
+    }
+
+    // Silences the ringing alarms: when a new session starts, the last alarm is dismissed, or the service is destroyed
+    private void stopSoundAndVibration() {
+        handler.removeCallbacks(prepareWatchdog);
+        if (audioTrack != null) {
+            try {
+                audioTrack.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "AudioTrack was not in a stoppable state.", e);
+            }
+            audioTrack.release();
+            audioTrack = null;
+            Log.d(TAG, "AudioTrack stopped and released.");
+        }
+        releaseMediaPlayer();
+        if (vibrator != null) {
+            vibrator.cancel();
+            vibrator = null;
+            Log.d(TAG, "Vibrator cancelled.");
+        }
+    }
+
+    private void releaseMediaPlayer() {
+        if (mediaPlayer != null) {
+            try {
+                if (mediaPlayer.isPlaying()) {
+                    mediaPlayer.stop();
+                }
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "MediaPlayer was not in a stoppable state.", e);
+            }
+            mediaPlayer.release();
+            mediaPlayer = null;
+            Log.d(TAG, "MediaPlayer stopped and released.");
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-            Log.d(TAG, "WakeLock released");
+        handler.removeCallbacks(refreshNotifications);
+        stopSoundAndVibration();
+        WakeLockManager wakeLocks = WakeLockManager.getInstance(this);
+        for (RingingAlarm alarm : ringing.values()) {
+            cancelAlarmNotification(alarm);
+            if (alarm.timeout != null) {
+                handler.removeCallbacks(alarm.timeout);
+            }
+            wakeLocks.release(WakeLockManager.ALARM, alarm.alarmId);
         }
+        ringing.clear();
         Log.d(TAG, "onDestroy");
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null; // Not a bound service
+        return binder; // AlarmRingingActivity binds to control playback
     }
 }
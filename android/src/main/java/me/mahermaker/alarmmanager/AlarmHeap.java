@@ -0,0 +1,163 @@
+package me.mahermaker.alarmmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Indexed binary min-heap of alarms ordered by trigger time.
+ * Keeps a position map so that insert, remove-by-id and reschedule are all O(log n).
+ * Not thread-safe; AlarmQueue guards every access.
+ */
+public class AlarmHeap {
+
+    private final ArrayList<AlarmRecord> heap = new ArrayList<>();
+    private final HashMap<String, Integer> positions = new HashMap<>();
+
+    public int size() {
+        return heap.size();
+    }
+
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    public boolean contains(String alarmId) {
+        return positions.containsKey(alarmId);
+    }
+
+    public AlarmRecord get(String alarmId) {
+        Integer index = positions.get(alarmId);
+        return index != null ? heap.get(index) : null;
+    }
+
+    public AlarmRecord peek() {
+        return heap.isEmpty() ? null : heap.get(0);
+    }
+
+    /**
+     * Inserts the record, replacing (and re-sifting) any record with the same alarmId.
+     */
+    public void offer(AlarmRecord record) {
+        Integer index = positions.get(record.alarmId);
+        if (index != null) {
+            heap.set(index, record);
+            if (!siftUp(index)) {
+                siftDown(index);
+            }
+            return;
+        }
+        heap.add(record);
+        positions.put(record.alarmId, heap.size() - 1);
+        siftUp(heap.size() - 1);
+    }
+
+    public AlarmRecord poll() {
+        if (heap.isEmpty()) {
+            return null;
+        }
+        return removeAt(0);
+    }
+
+    public AlarmRecord remove(String alarmId) {
+        Integer index = positions.get(alarmId);
+        return index != null ? removeAt(index) : null;
+    }
+
+    /**
+     * Collects every record with {@code at <= bound}, ordered by trigger time. Subtrees whose root
+     * is already past the bound are skipped, so the cost is proportional to the number of matches.
+     */
+    public List<AlarmRecord> headUntil(long bound) {
+        List<AlarmRecord> matches = new ArrayList<>();
+        if (heap.isEmpty()) {
+            return matches;
+        }
+        ArrayList<Integer> stack = new ArrayList<>();
+        stack.add(0);
+        while (!stack.isEmpty()) {
+            int index = stack.remove(stack.size() - 1);
+            AlarmRecord record = heap.get(index);
+            if (record.at > bound) {
+                continue; // Heap order: nothing below this node can be earlier
+            }
+            matches.add(record);
+            int left = 2 * index + 1;
+            if (left < heap.size()) {
+                stack.add(left);
+            }
+            if (left + 1 < heap.size()) {
+                stack.add(left + 1);
+            }
+        }
+        matches.sort(AlarmHeap::compare);
+        return matches;
+    }
+
+    public List<AlarmRecord> toList() {
+        return new ArrayList<>(heap);
+    }
+
+    private AlarmRecord removeAt(int index) {
+        AlarmRecord removed = heap.get(index);
+        positions.remove(removed.alarmId);
+        int last = heap.size() - 1;
+        AlarmRecord tail = heap.remove(last);
+        if (index != last) {
+            heap.set(index, tail);
+            positions.put(tail.alarmId, index);
+            if (!siftUp(index)) {
+                siftDown(index);
+            }
+        }
+        return removed;
+    }
+
+    private boolean siftUp(int index) {
+        boolean moved = false;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compare(heap.get(index), heap.get(parent)) >= 0) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+            moved = true;
+        }
+        return moved;
+    }
+
+    private void siftDown(int index) {
+        int size = heap.size();
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && compare(heap.get(right), heap.get(left)) < 0) {
+                smallest = right;
+            }
+            if (compare(heap.get(smallest), heap.get(index)) >= 0) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        AlarmRecord ra = heap.get(a);
+        AlarmRecord rb = heap.get(b);
+        heap.set(a, rb);
+        heap.set(b, ra);
+        positions.put(rb.alarmId, a);
+        positions.put(ra.alarmId, b);
+    }
+
+    private static int compare(AlarmRecord a, AlarmRecord b) {
+        int byTime = Long.compare(a.at, b.at);
+        return byTime != 0 ? byTime : a.alarmId.compareTo(b.alarmId);
+    }
+}
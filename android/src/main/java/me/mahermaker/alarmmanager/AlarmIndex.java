@@ -0,0 +1,145 @@
+package me.mahermaker.alarmmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of scheduled alarms: O(1) lookup by alarmId, O(log n) range queries by
+ * trigger time, and an inverted index from tag to alarm IDs so tag queries touch only the k
+ * matching alarms. Not thread-safe; AlarmStore guards every access.
+ */
+public class AlarmIndex {
+
+    // Orders by trigger time, then alarmId so that records sharing a timestamp stay distinct
+    static final Comparator<AlarmRecord> BY_TIME = (a, b) -> {
+        int byTime = Long.compare(a.at, b.at);
+        return byTime != 0 ? byTime : a.alarmId.compareTo(b.alarmId);
+    };
+
+    private final HashMap<String, AlarmRecord> byId = new HashMap<>();
+    private final TreeSet<AlarmRecord> byTime = new TreeSet<>(BY_TIME);
+    private final HashMap<String, HashSet<String>> byTag = new HashMap<>(); // Only tags with at least one alarm
+
+    public void put(AlarmRecord record) {
+        AlarmRecord previous = byId.put(record.alarmId, record);
+        if (previous != null) {
+            byTime.remove(previous);
+            untag(previous);
+        }
+        byTime.add(record);
+        if (record.tags != null) {
+            for (String tag : record.tags) {
+                HashSet<String> ids = byTag.get(tag);
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    byTag.put(tag, ids);
+                }
+                ids.add(record.alarmId);
+            }
+        }
+    }
+
+    public AlarmRecord remove(String alarmId) {
+        AlarmRecord removed = byId.remove(alarmId);
+        if (removed != null) {
+            byTime.remove(removed);
+            untag(removed);
+        }
+        return removed;
+    }
+
+    private void untag(AlarmRecord record) {
+        if (record.tags == null) {
+            return;
+        }
+        for (String tag : record.tags) {
+            HashSet<String> ids = byTag.get(tag);
+            if (ids != null && ids.remove(record.alarmId) && ids.isEmpty()) {
+                byTag.remove(tag);
+            }
+        }
+    }
+
+    public AlarmRecord get(String alarmId) {
+        return byId.get(alarmId);
+    }
+
+    public boolean contains(String alarmId) {
+        return byId.containsKey(alarmId);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return every record, ordered by trigger time.
+     */
+    public List<AlarmRecord> values() {
+        return new ArrayList<>(byTime);
+    }
+
+    /**
+     * Returns up to {@code limit} records with {@code from <= at <= to}, ordered by trigger time.
+     * If {@code afterAt}/{@code afterId} are given (from a previous page), only records strictly
+     * after that position are returned.
+     */
+    public List<AlarmRecord> range(long from, long to, Long afterAt, String afterId, int limit) {
+        NavigableSet<AlarmRecord> tail;
+        if (afterAt != null && afterId != null && afterAt >= from) {
+            tail = byTime.tailSet(probe(afterAt, afterId), false);
+        } else {
+            tail = byTime.tailSet(probe(from, ""), true);
+        }
+        List<AlarmRecord> page = new ArrayList<>(Math.min(limit, 64));
+        for (AlarmRecord record : tail) {
+            if (record.at > to || page.size() >= limit) {
+                break;
+            }
+            page.add(record);
+        }
+        return page;
+    }
+
+    /**
+     * @return the IDs of every alarm carrying {@code tag}, in no particular order.
+     */
+    public List<String> idsWithTag(String tag) {
+        HashSet<String> ids = byTag.get(tag);
+        return ids != null ? new ArrayList<>(ids) : new ArrayList<>();
+    }
+
+    /**
+     * @return every record carrying {@code tag}, ordered by trigger time.
+     */
+    public List<AlarmRecord> withTag(String tag) {
+        HashSet<String> ids = byTag.get(tag);
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<AlarmRecord> tagged = new ArrayList<>(ids.size());
+        for (String alarmId : ids) {
+            tagged.add(byId.get(alarmId));
+        }
+        Collections.sort(tagged, BY_TIME);
+        return tagged;
+    }
+
+    public int countWithTag(String tag) {
+        HashSet<String> ids = byTag.get(tag);
+        return ids != null ? ids.size() : 0;
+    }
+
+    private static AlarmRecord probe(long at, String alarmId) {
+        AlarmRecord probe = new AlarmRecord();
+        probe.at = at;
+        probe.alarmId = alarmId;
+        return probe;
+    }
+}
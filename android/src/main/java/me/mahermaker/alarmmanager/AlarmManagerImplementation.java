@@ -2,105 +2,159 @@ package me.mahermaker.alarmmanager;
 
 import android.app.AlarmManager;
 import android.app.PendingIntent;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
-import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class AlarmManagerImplementation {
 
     private static final String TAG = "AlarmManagerImpl";
+    private static final String TRIGGER_ACTION_PREFIX = "me.mahermaker.alarmmanager.ALARM_TRIGGER_ACTION_";
     private Context context; // Added context field
+    private final ComponentName receiverComponent; // Resolved once, reused for every trigger Intent
+    private AlarmManager alarmManager; // Looked up once, reused across calls and batches
 
     // Constructor to receive context
     public AlarmManagerImplementation(Context context) {
+        this(context, new ComponentName(context, AlarmReceiver.class));
+    }
+
+    AlarmManagerImplementation(Context context, ComponentName receiverComponent) {
         this.context = context;
+        this.receiverComponent = receiverComponent;
     }
 
-    public boolean setAlarm(JSObject alarmConfig) {
-        Log.d(TAG, "setAlarm called with config: " + alarmConfig.toString());
+    Context getContext() {
+        return this.context;
+    }
 
-        String alarmId = alarmConfig.getString("alarmId");
-        long at = alarmConfig.optLong("at"); // Use optLong for safety, though we validate in ManagerPlugin
-        boolean exact = alarmConfig.optBoolean("exact", true);
-        String name = alarmConfig.optString("name", "Alarm");
-        JSObject extras = alarmConfig.getJSObject("extra");
-        JSObject uiOptions = alarmConfig.getJSObject("uiOptions"); // Get UI options
+    private AlarmManager getAlarmManager() {
+        if (alarmManager == null) {
+            alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        }
+        return alarmManager;
+    }
 
-        String uiOptionsJson = null;
-        if (uiOptions != null) {
-            try {
-                uiOptionsJson = uiOptions.toString(); // Convert JSObject to JSON String
-                Log.d(TAG, "Received uiOptions as JSObject, converted to JSON: " + uiOptionsJson);
-            } catch (Exception e) {
-                Log.e(TAG, "Error converting uiOptions JSObject to String", e);
+    public boolean canScheduleExactAlarms() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return true;
+        }
+        AlarmManager alarmManager = getAlarmManager();
+        return alarmManager != null && alarmManager.canScheduleExactAlarms();
+    }
+
+    public boolean setAlarm(AlarmRecord record) {
+        Log.d(TAG, "setAlarm called for ID: " + record.alarmId + " at " + record.at);
+        return setAlarms(Collections.singletonList(record))[0];
+    }
+
+    /**
+     * Schedules a batch of alarms and persists the ones that succeeded in a single store write.
+     * @return one success flag per record, in input order.
+     */
+    public boolean[] setAlarms(List<AlarmRecord> records) {
+        boolean[] results = scheduleRecords(records);
+        List<AlarmRecord> scheduled = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (results[i]) {
+                scheduled.add(records.get(i));
             }
-        } else {
-            Log.d(TAG, "uiOptions JSObject was null.");
         }
+        AlarmStore.getInstance(this.context).putAll(scheduled); // Persist so BootReceiver can re-arm them
+        SoundCache.getInstance(this.context).prefetch(scheduled); // Decode sounds now rather than when they ring
+        return results;
+    }
 
-        if (alarmId == null || alarmId.isEmpty() || at == 0) {
-            Log.e(TAG, "Alarm ID or time 'at' is missing or invalid.");
-            return false; // Indicate failure
+    /**
+     * Registers already-built records with the OS (or the multiplexed queue) without touching
+     * the store. Used directly when re-arming records that were loaded from AlarmStore.
+     * The exact-alarm permission is checked once and the multiplexed queue is re-armed at most once
+     * per batch.
+     * @return one success flag per record, in input order.
+     */
+    public boolean[] scheduleRecords(List<AlarmRecord> records) {
+        boolean[] results = new boolean[records.size()];
+        AlarmManager alarmManager = getAlarmManager();
+        if (alarmManager == null) {
+            Log.e(TAG, "AlarmManager service is null.");
+            return results; // Indicate failure for every record
         }
 
-        Intent intent = new Intent(this.context, AlarmReceiver.class); // Use this.context
-        intent.setAction("me.mahermaker.alarmmanager.ALARM_TRIGGER_ACTION_" + alarmId); // Unique action per alarm
-        intent.putExtra("alarmId", alarmId);
-        intent.putExtra("name", name);
-        if (extras != null) {
-            intent.putExtra("extra", extras.toString()); // Pass extras as a JSON string
+        boolean canScheduleExact = canScheduleExactAlarms();
+        if (!canScheduleExact) {
+            Log.w(TAG, "Cannot schedule exact alarms. App needs SCHEDULE_EXACT_ALARM permission or user disabled it.");
         }
-        if (uiOptionsJson != null) {
-            intent.putExtra("uiOptions", uiOptionsJson); // Pass uiOptions as a JSON string
+
+        AlarmStore store = AlarmStore.getInstance(this.context);
+        List<AlarmRecord> queued = new ArrayList<>();
+        List<String> plainIds = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            AlarmRecord record = records.get(i);
+            if (record.exact && !canScheduleExact) { // If exact was specifically requested, treat as failure for now.
+                Log.e(TAG, "Exact alarm requested but cannot be scheduled. Failing ID: " + record.alarmId);
+                continue;
+            }
+            if (record.multiplexed) {
+                AlarmRecord previous = store.get(record.alarmId);
+                if (previous != null && !previous.multiplexed) {
+                    // A plain alarm with the same ID would otherwise fire alongside the queued one
+                    cancelOsAlarm(record.alarmId);
+                }
+                queued.add(record);
+                results[i] = true;
+            } else {
+                plainIds.add(record.alarmId);
+                results[i] = armOsAlarm(alarmManager, record);
+            }
         }
 
-        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            flags |= PendingIntent.FLAG_IMMUTABLE;
+        RequestCodeTable.getInstance(this.context).flush(); // New request codes from armOsAlarm, one write per batch
+        AlarmQueue queue = AlarmQueue.getInstance(this.context);
+        if (!plainIds.isEmpty()) {
+            queue.removeAll(plainIds); // Re-set as plain alarms, drop any queued copies
         }
+        if (!queued.isEmpty()) {
+            queue.enqueueAll(queued);
+        }
+        return results;
+    }
+
+    private boolean armOsAlarm(AlarmManager alarmManager, AlarmRecord record) {
+        String alarmId = record.alarmId;
+        long at = record.at;
 
+        Intent intent = new Intent();
+        intent.setComponent(receiverComponent);
+        intent.setAction(TRIGGER_ACTION_PREFIX + alarmId); // Unique action per alarm
+        intent.putExtra("alarmId", alarmId); // Payload stays in AlarmStore, keeping the PendingIntent small
+        intent.putExtra("at", at); // Intended trigger time, so the receiver can measure delivery drift
+
+        int requestCode = requestCodeFor(intent, alarmId, RequestCodeTable.getInstance(this.context));
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
                 this.context, // Use this.context
-                alarmId.hashCode(), // Use alarmId's hashcode as request code for uniqueness
+                requestCode,
                 intent,
-                flags
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
 
-        AlarmManager alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE); // Use this.context
-
-        if (alarmManager == null) {
-            Log.e(TAG, "AlarmManager service is null.");
-            return false; // Indicate failure
-        }
-
         try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
-                Log.w(TAG, "Cannot schedule exact alarms. App needs SCHEDULE_EXACT_ALARM permission or user disabled it.");
-                if (exact) { // If exact was specifically requested, treat as failure for now.
-                    Log.e(TAG, "Exact alarm requested but cannot be scheduled. Failing.");
-                    return false; // Indicate failure
-                }
-            }
-
-            if (exact) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, pendingIntent);
-                    Log.i(TAG, "Scheduled exact alarm while idle for ID: " + alarmId + " at " + at);
-                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    alarmManager.setExact(AlarmManager.RTC_WAKEUP, at, pendingIntent);
-                    Log.i(TAG, "Scheduled exact alarm for ID: " + alarmId + " at " + at);
-                } else {
-                    alarmManager.set(AlarmManager.RTC_WAKEUP, at, pendingIntent);
-                    Log.i(TAG, "Scheduled legacy (exact-ish) alarm for ID: " + alarmId + " at " + at);
-                }
+            if (AlarmRecord.PRIORITY_CRITICAL.equals(record.priority)) {
+                // Alarm-clock alarms are exempt from Doze and shown to the user as the next alarm
+                alarmManager.setAlarmClock(new AlarmManager.AlarmClockInfo(at, showIntent(requestCode)), pendingIntent);
+                Log.i(TAG, "Scheduled alarm clock for critical alarm ID: " + alarmId + " at " + at);
+            } else if (record.exact) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, pendingIntent);
+                Log.i(TAG, "Scheduled exact alarm while idle for ID: " + alarmId + " at " + at);
             } else {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, pendingIntent);
-                } else {
-                    alarmManager.set(AlarmManager.RTC_WAKEUP, at, pendingIntent);
-                }
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, pendingIntent);
                 Log.i(TAG, "Scheduled inexact alarm for ID: " + alarmId + " at " + at);
             }
             return true; // Indicate success
@@ -113,61 +167,221 @@ public class AlarmManagerImplementation {
         }
     }
 
-    public void cancelAlarm(String alarmId) {
+    // Opened when the user taps the alarm clock icon of a critical alarm in the status bar or lock screen
+    private PendingIntent showIntent(int requestCode) {
+        Intent launchIntent = this.context.getPackageManager().getLaunchIntentForPackage(this.context.getPackageName());
+        if (launchIntent == null) {
+            launchIntent = new Intent(this.context, AlarmRingingActivity.class);
+        }
+        launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        return PendingIntent.getActivity(this.context, requestCode, launchIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /**
+     * Outcome of {@link #sync(List)}: which IDs were added, updated, removed, expired or left untouched.
+     */
+    public static class SyncResult {
+        public final List<String> added = new ArrayList<>();
+        public final List<String> updated = new ArrayList<>();
+        public final List<String> removed = new ArrayList<>();
+        public final List<String> failed = new ArrayList<>();
+        public final List<String> expired = new ArrayList<>();
+        public int unchanged;
+    }
+
+    /**
+     * Reconciles the scheduled set with {@code desired}. Records whose content hash matches the
+     * stored copy are left alone, so a sync that changes nothing makes no system calls at all.
+     * Stored alarms missing from {@code desired} are cancelled. Desired one-shot alarms that are not
+     * stored and whose time has passed already fired, so they are reported as expired, not re-set.
+     */
+    public SyncResult sync(List<AlarmRecord> desired) {
+        SyncResult result = new SyncResult();
+        long now = System.currentTimeMillis();
+        AlarmStore store = AlarmStore.getInstance(this.context);
+
+        Map<String, AlarmRecord> desiredById = new LinkedHashMap<>();
+        for (AlarmRecord record : desired) {
+            desiredById.put(record.alarmId, record); // Last entry wins for duplicate IDs
+        }
+
+        List<AlarmRecord> toSet = new ArrayList<>();
+        List<Boolean> isUpdate = new ArrayList<>();
+        for (AlarmRecord record : desiredById.values()) {
+            AlarmRecord current = store.get(record.alarmId);
+            if (current != null && current.contentHash() == record.contentHash()) {
+                result.unchanged++;
+                continue;
+            }
+            if (current == null && record.getRecurrence() == null && record.at <= now) {
+                result.expired.add(record.alarmId); // Would ring again on every sync
+                continue;
+            }
+            toSet.add(record);
+            isUpdate.add(current != null);
+        }
+
+        List<String> toRemove = new ArrayList<>();
+        for (AlarmRecord current : store.getAll()) {
+            if (!desiredById.containsKey(current.alarmId)) {
+                toRemove.add(current.alarmId);
+            }
+        }
+
+        if (!toRemove.isEmpty()) {
+            cancelAlarms(toRemove);
+            result.removed.addAll(toRemove);
+        }
+        if (!toSet.isEmpty()) {
+            boolean[] scheduled = setAlarms(toSet);
+            for (int i = 0; i < toSet.size(); i++) {
+                String alarmId = toSet.get(i).alarmId;
+                if (!scheduled[i]) {
+                    result.failed.add(alarmId);
+                } else if (isUpdate.get(i)) {
+                    result.updated.add(alarmId);
+                } else {
+                    result.added.add(alarmId);
+                }
+            }
+        }
+
+        Log.i(TAG, "sync: " + result.added.size() + " added, " + result.updated.size() + " updated, "
+                + result.removed.size() + " removed, " + result.expired.size() + " expired, " + result.unchanged + " unchanged, "
+                + result.failed.size() + " failed");
+        return result;
+    }
+
+    /**
+     * @return true if an alarm with this ID was found and cancelled.
+     */
+    public boolean cancelAlarm(String alarmId) {
         Log.d(TAG, "cancelAlarm called for ID: " + alarmId);
         if (alarmId == null || alarmId.isEmpty()) {
             Log.w(TAG, "Cannot cancel alarm: ID is null or empty.");
-            return;
+            return false;
+        }
+        return cancelAlarms(Collections.singletonList(alarmId))[0];
+    }
+
+    /**
+     * Cancels a batch of alarms, removing them from the store in a single write and re-arming the
+     * multiplexed queue at most once.
+     * @return one flag per ID, true if that alarm was found and cancelled.
+     */
+    public boolean[] cancelAlarms(List<String> alarmIds) {
+        boolean[] results = new boolean[alarmIds.size()];
+        AlarmStore store = AlarmStore.getInstance(this.context);
+        List<AlarmRecord> removed = store.removeAll(alarmIds);
+        boolean[] dequeued = AlarmQueue.getInstance(this.context).removeAll(alarmIds);
+        RequestCodeTable codes = RequestCodeTable.getInstance(this.context);
+
+        for (int i = 0; i < alarmIds.size(); i++) {
+            String alarmId = alarmIds.get(i);
+            AlarmRecord record = removed.get(i);
+            if (dequeued[i]) {
+                results[i] = true; // Multiplexed alarm, no OS alarm of its own to cancel
+            } else if (record == null || !record.multiplexed) {
+                // Unknown to the store (e.g. scheduled before it existed) or a plain alarm
+                results[i] = cancelOsAlarm(alarmId) || record != null;
+            } else {
+                results[i] = true;
+            }
+        }
+        codes.flush();
+        return results;
+    }
+
+    /**
+     * Cancels every alarm carrying {@code tag}, looking them up through the store's tag index.
+     * @return how many alarms were cancelled.
+     */
+    public int cancelByTag(String tag) {
+        List<String> alarmIds = AlarmStore.getInstance(this.context).idsWithTag(tag);
+        if (alarmIds.isEmpty()) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (boolean success : cancelAlarms(alarmIds)) {
+            if (success) {
+                cancelled++;
+            }
         }
+        Log.i(TAG, "Cancelled " + cancelled + " alarms tagged '" + tag + "'");
+        return cancelled;
+    }
+
+    private boolean cancelOsAlarm(String alarmId) {
+        Intent intent = new Intent();
+        intent.setComponent(receiverComponent);
+        intent.setAction(TRIGGER_ACTION_PREFIX + alarmId);
 
-        Intent intent = new Intent(this.context, AlarmReceiver.class); // Use this.context
-        intent.setAction("me.mahermaker.alarmmanager.ALARM_TRIGGER_ACTION_" + alarmId);
+        RequestCodeTable codes = RequestCodeTable.getInstance(this.context);
+        int requestCode = codes.get(alarmId);
+        boolean cancelled = false;
+        if (requestCode == RequestCodeTable.NO_CODE) {
+            // Unknown to the table: it may have been armed by 0.1.0 under alarmId.hashCode()
+            cancelled = cancelPendingIntent(intent, alarmId.hashCode());
+        }
+        if (requestCode != RequestCodeTable.NO_CODE) {
+            cancelled |= cancelPendingIntent(intent, requestCode);
+            codes.free(alarmId); // The OS alarm is gone, the code can go to another alarm
+        }
+        if (cancelled) {
+            Log.i(TAG, "Cancelled alarm with ID: " + alarmId);
+        } else {
+            Log.w(TAG, "PendingIntent for alarm ID " + alarmId + " not found, may not be scheduled or action/ID mismatch.");
+        }
+        return cancelled;
+    }
 
-        int flags = PendingIntent.FLAG_NO_CREATE; // Important: FLAG_NO_CREATE to check existence before cancelling
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            flags |= PendingIntent.FLAG_IMMUTABLE;
+    /**
+     * @return the request code to arm {@code alarmId} under. An ID the table doesn't know yet may
+     * have been armed by 0.1.0 under {@code alarmId.hashCode()}; that alarm is cancelled first so it
+     * doesn't fire alongside the new one.
+     */
+    int requestCodeFor(Intent intent, String alarmId, RequestCodeTable codes) {
+        if (codes.get(alarmId) == RequestCodeTable.NO_CODE) {
+            cancelPendingIntent(intent, alarmId.hashCode());
         }
+        return codes.intern(alarmId); // Unique per alarm, unlike alarmId.hashCode()
+    }
 
+    /**
+     * Cancels the OS alarm and PendingIntent matching {@code intent} and {@code requestCode}, if one exists.
+     */
+    boolean cancelPendingIntent(Intent intent, int requestCode) {
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
                 this.context, // Use this.context
-                alarmId.hashCode(),
+                requestCode,
                 intent,
-                flags
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE // Important: FLAG_NO_CREATE to check existence before cancelling
         );
 
-        AlarmManager alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE); // Use this.context
-        if (alarmManager != null && pendingIntent != null) {
-            alarmManager.cancel(pendingIntent);
-            pendingIntent.cancel(); // Also cancel the PendingIntent itself
-            Log.i(TAG, "Cancelled alarm with ID: " + alarmId);
-        } else {
-            if (alarmManager == null) Log.w(TAG, "AlarmManager service is null, cannot cancel alarm ID: " + alarmId);
-            if (pendingIntent == null) Log.w(TAG, "PendingIntent for alarm ID " + alarmId + " not found, may not be scheduled or action/ID mismatch.");
+        AlarmManager alarmManager = getAlarmManager();
+        if (alarmManager == null) {
+            Log.w(TAG, "AlarmManager service is null, cannot cancel request code " + requestCode);
+            return false;
+        }
+        if (pendingIntent == null) {
+            return false;
         }
+        alarmManager.cancel(pendingIntent);
+        pendingIntent.cancel(); // Also cancel the PendingIntent itself
+        return true;
     }
 
+    /**
+     * Answered from the in-memory store index, so it never makes a system call.
+     */
     public boolean isScheduled(String alarmId) {
         Log.d(TAG, "isScheduled called for ID: " + alarmId);
         if (alarmId == null || alarmId.isEmpty()) {
             Log.w(TAG, "Cannot check schedule: ID is null or empty.");
             return false;
         }
-
-        Intent intent = new Intent(this.context, AlarmReceiver.class); // Use this.context
-        intent.setAction("me.mahermaker.alarmmanager.ALARM_TRIGGER_ACTION_" + alarmId);
-
-        int flags = PendingIntent.FLAG_NO_CREATE;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            flags |= PendingIntent.FLAG_IMMUTABLE;
-        }
-
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                this.context, // Use this.context
-                alarmId.hashCode(),
-                intent,
-                flags
-        );
-        boolean isSet = pendingIntent != null;
+        boolean isSet = AlarmStore.getInstance(this.context).contains(alarmId);
         Log.i(TAG, "Alarm ID " + alarmId + " isScheduled: " + isSet);
         return isSet;
     }
@@ -0,0 +1,143 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds alarm payloads (name, extra, uiOptions, ...) so that the Intents passed between
+ * AlarmReceiver, AlarmForegroundService and AlarmRingingActivity only need to carry the alarmId.
+ * Lookups go through a small LRU cache of retained payloads, then AlarmStore for scheduled alarms,
+ * then a binary record on disk for alarms that have fired (and left AlarmStore) or are snoozed.
+ * Records from AlarmStore are not cached: the store is already an in-memory index, and a copy here
+ * would go stale when the alarm is re-set or cancelled.
+ */
+public class AlarmPayloadStore {
+    private static final String TAG = "AlarmPayloadStore";
+    private static final String DIR_NAME = "alarm_payloads";
+    private static final int CACHE_SIZE = 32; // Ringing and snoozed alarms, not the whole schedule
+    private static final long STALE_AFTER_MS = 24 * 60 * 60 * 1000L; // Payloads never released, e.g. process killed
+
+    private static AlarmPayloadStore instance;
+
+    private final Context context;
+    private final File dir;
+    private final LinkedHashMap<String, AlarmRecord> cache = new LinkedHashMap<String, AlarmRecord>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AlarmRecord> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public static synchronized AlarmPayloadStore getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new AlarmPayloadStore(appContext, new File(DeviceStorage.get(context).getFilesDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    private AlarmPayloadStore(Context context, File dir) {
+        this.context = context;
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create payload directory: " + dir);
+        }
+        pruneStale();
+    }
+
+    /**
+     * @return the payload for this alarm, or null if it is neither scheduled nor retained.
+     */
+    public synchronized AlarmRecord get(String alarmId) {
+        if (alarmId == null) {
+            return null;
+        }
+        AlarmRecord record = cache.get(alarmId);
+        if (record != null) {
+            return record;
+        }
+        record = AlarmStore.getInstance(context).get(alarmId);
+        if (record != null) {
+            return record;
+        }
+        record = readFile(alarmId);
+        if (record != null) {
+            cache.put(alarmId, record); // Retained before the process restarted; changes only through retain/release
+        }
+        return record;
+    }
+
+    /**
+     * Keeps the payload readable after the alarm leaves AlarmStore, until {@link #release(String)}.
+     * Called when an alarm fires (so the ringing screen can still read it) and for snoozes.
+     */
+    public synchronized void retain(AlarmRecord record) {
+        cache.put(record.alarmId, record);
+        File file = fileFor(record.alarmId);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            record.writeTo(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write payload for alarm " + record.alarmId + ", keeping it in memory only.", e);
+        }
+    }
+
+    /**
+     * Drops a retained payload once the alarm has been dismissed or snoozed.
+     */
+    public synchronized void release(String alarmId) {
+        if (alarmId == null) {
+            return;
+        }
+        cache.remove(alarmId);
+        File file = fileFor(alarmId);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete payload file for alarm " + alarmId);
+        }
+    }
+
+    private AlarmRecord readFile(String alarmId) {
+        File file = fileFor(alarmId);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return AlarmRecord.readFrom(in);
+        } catch (IOException e) {
+            Log.e(TAG, "Payload file for alarm " + alarmId + " is unreadable.", e);
+            return null;
+        }
+    }
+
+    private File fileFor(String alarmId) {
+        // URL-safe Base64 keeps arbitrary alarm IDs valid (and distinct) as file names
+        String name = Base64.encodeToString(alarmId.getBytes(StandardCharsets.UTF_8),
+                Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+        return new File(dir, name + ".bin");
+    }
+
+    private void pruneStale() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - STALE_AFTER_MS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && file.delete()) {
+                Log.d(TAG, "Pruned stale payload " + file.getName());
+            }
+        }
+    }
+}
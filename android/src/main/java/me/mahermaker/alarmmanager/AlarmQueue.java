@@ -0,0 +1,220 @@
+package me.mahermaker.alarmmanager;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Multiplexes any number of alarms onto a single OS alarm.
+ * Every multiplexed alarm lives in an in-process {@link AlarmHeap}; only the earliest deadline
+ * is armed with the system AlarmManager. When it fires, AlarmReceiver drains every due alarm
+ * via {@link #pollDue(long)} and the queue re-arms itself for the next deadline.
+ * This sidesteps the per-app limit on outstanding alarms and avoids one Binder call per set/cancel.
+ * Durability is handled by {@link AlarmStore}; the heap is rebuilt from it when the process starts.
+ * <p>
+ * Alarms with a {@code toleranceMs} are coalesced: the wakeup is pushed back to the latest trigger
+ * time that still lies within every grouped alarm's tolerance, so the whole group is delivered by a
+ * single OS wakeup and a single receiver wake lock.
+ */
+public class AlarmQueue {
+    private static final String TAG = "AlarmQueue";
+    public static final String ACTION_QUEUE_TICK = "me.mahermaker.alarmmanager.ACTION_QUEUE_TICK";
+    private static final int QUEUE_REQUEST_CODE = 400; // Single PendingIntent shared by all multiplexed alarms
+
+    private static AlarmQueue instance;
+
+    private final Context context;
+    private final AlarmHeap heap = new AlarmHeap();
+    private long armedAt = Long.MIN_VALUE; // Trigger time currently registered with the OS, MIN_VALUE if unknown
+    private long armedUntil = Long.MIN_VALUE; // End of the registered window (== armedAt for an exact wakeup)
+
+    public static synchronized AlarmQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmQueue(Context context) {
+        this.context = context;
+        for (AlarmRecord record : AlarmStore.getInstance(context).getAll()) {
+            if (record.multiplexed) {
+                heap.offer(record);
+            }
+        }
+        Log.d(TAG, "Loaded " + heap.size() + " multiplexed alarms.");
+    }
+
+    public synchronized void enqueue(AlarmRecord record) {
+        enqueueAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Queues a batch of alarms, touching the OS at most once for the whole batch.
+     */
+    public synchronized void enqueueAll(List<AlarmRecord> records) {
+        for (AlarmRecord record : records) {
+            heap.offer(record);
+        }
+        Log.i(TAG, "Queued " + records.size() + " multiplexed alarms (" + heap.size() + " queued)");
+        rearmIfNeeded();
+    }
+
+    public synchronized boolean remove(String alarmId) {
+        return removeAll(Collections.singletonList(alarmId))[0];
+    }
+
+    /**
+     * Removes a batch of alarms, touching the OS at most once for the whole batch.
+     * @return one flag per ID, true if it was queued.
+     */
+    public synchronized boolean[] removeAll(List<String> alarmIds) {
+        boolean[] removed = new boolean[alarmIds.size()];
+        int count = 0;
+        for (int i = 0; i < alarmIds.size(); i++) {
+            removed[i] = heap.remove(alarmIds.get(i)) != null;
+            if (removed[i]) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            Log.i(TAG, "Removed " + count + " multiplexed alarms (" + heap.size() + " queued)");
+            rearmIfNeeded();
+        }
+        return removed;
+    }
+
+    public synchronized boolean contains(String alarmId) {
+        return heap.contains(alarmId);
+    }
+
+    public synchronized int size() {
+        return heap.size();
+    }
+
+    /**
+     * Removes and returns every alarm whose trigger time is at or before {@code now}, then re-arms
+     * the OS alarm for the next deadline.
+     */
+    public synchronized List<AlarmRecord> pollDue(long now) {
+        List<AlarmRecord> due = new ArrayList<>();
+        while (!heap.isEmpty() && heap.peek().at <= now) {
+            due.add(heap.poll());
+        }
+        armedAt = Long.MIN_VALUE; // The OS alarm that woke us is consumed
+        armedUntil = Long.MIN_VALUE;
+        rearmIfNeeded();
+        Log.d(TAG, "Queue tick delivered " + due.size() + " alarms, " + heap.size() + " remaining.");
+        return due;
+    }
+
+    /**
+     * Forces the OS alarm to be registered again, e.g. after a reboot cleared it.
+     */
+    public synchronized void rearm() {
+        armedAt = Long.MIN_VALUE;
+        armedUntil = Long.MIN_VALUE;
+        rearmIfNeeded();
+    }
+
+    /**
+     * Coalesced wakeup for the alarms at the head of the queue.
+     */
+    static final class Wakeup {
+        long at; // Latest grouped trigger time; an exact wakeup fires here
+        long until; // Earliest grouped deadline (at + toleranceMs)
+        boolean exact; // True if any grouped alarm asked for an exact wakeup
+        int size;
+    }
+
+    /**
+     * Groups the head alarm with every following alarm it can share a wakeup with. Each alarm may
+     * fire up to its {@code toleranceMs} late, so the group extends while the next trigger time is
+     * still before every grouped alarm's deadline.
+     */
+    static Wakeup coalesce(AlarmHeap heap) {
+        AlarmRecord head = heap.peek();
+        if (head == null) {
+            return null;
+        }
+        Wakeup wakeup = new Wakeup();
+        wakeup.at = head.at;
+        wakeup.until = head.at + head.toleranceMs;
+        wakeup.exact = head.exact;
+        wakeup.size = 1;
+        if (head.toleranceMs == 0) {
+            return wakeup; // Nothing can be grouped behind an alarm that must fire on time
+        }
+        List<AlarmRecord> candidates = heap.headUntil(wakeup.until);
+        for (int i = 1; i < candidates.size(); i++) {
+            AlarmRecord record = candidates.get(i);
+            if (record.at > wakeup.until) {
+                break;
+            }
+            wakeup.at = record.at;
+            wakeup.until = Math.min(wakeup.until, record.at + record.toleranceMs);
+            wakeup.exact |= record.exact;
+            wakeup.size++;
+        }
+        return wakeup;
+    }
+
+    private void rearmIfNeeded() {
+        Wakeup wakeup = coalesce(heap);
+        long nextAt = wakeup != null ? wakeup.at : Long.MIN_VALUE;
+        long nextUntil = wakeup != null ? wakeup.until : Long.MIN_VALUE;
+        if (nextAt == armedAt && nextUntil == armedUntil) {
+            return; // Wakeup unchanged, no need to touch the OS
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            Log.e(TAG, "AlarmManager service is null, cannot arm queue.");
+            return;
+        }
+
+        PendingIntent tickIntent = buildTickIntent();
+        if (wakeup == null) {
+            alarmManager.cancel(tickIntent);
+            armedAt = Long.MIN_VALUE;
+            armedUntil = Long.MIN_VALUE;
+            Log.d(TAG, "Queue empty, OS alarm cancelled.");
+            return;
+        }
+
+        try {
+            boolean exact = wakeup.exact;
+            if (exact && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+                Log.w(TAG, "Exact alarm permission revoked, arming queue inexactly.");
+                exact = false;
+            }
+            if (exact) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, wakeup.at, tickIntent);
+            } else {
+                // Inexact and allowed while idle, so the OS may batch it with other wakeups but Doze
+                // cannot hold it back indefinitely (setWindow has no while-idle variant)
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, wakeup.at, tickIntent);
+            }
+            armedAt = wakeup.at;
+            armedUntil = wakeup.until;
+            Log.d(TAG, "Queue armed for " + wakeup.at + " covering " + wakeup.size + " alarms (window until "
+                    + wakeup.until + ", exact: " + exact + ")");
+        } catch (SecurityException se) {
+            Log.e(TAG, "SecurityException while arming queue.", se);
+        }
+    }
+
+    private PendingIntent buildTickIntent() {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_QUEUE_TICK);
+        return PendingIntent.getBroadcast(context, QUEUE_REQUEST_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
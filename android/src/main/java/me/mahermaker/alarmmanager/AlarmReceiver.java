@@ -4,56 +4,195 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
-import android.os.PowerManager;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
 public class AlarmReceiver extends BroadcastReceiver {
     private static final String TAG = "AlarmReceiver";
     public static final String ALARM_CHANNEL_ID = "alarm_channel";
+    private static final String RECEIVER_LOCK_OWNER = "onReceive";
+    private static final long HANDOFF_LOCK_MS = 60 * 1000L; // Until AlarmForegroundService takes the alarm's lock over
+
+    // Deliveries run one at a time on a thread of their own, so the fire path never waits behind scheduling work
+    private static final ExecutorService delivery = Executors.newSingleThreadExecutor();
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        PowerManager.WakeLock wakeLock = null;
-        if (powerManager != null) {
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + "::AlarmWakeLock");
-            wakeLock.acquire(10 * 1000L /* 10 seconds, service will take over */);
-            Log.d(TAG, "Partial WakeLock acquired by Receiver");
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+        // Store reads and payload writes stay off the main thread; re-arming is queued on the SchedulingExecutor
+        delivery.execute(() -> {
+            try {
+                WakeLockManager wakeLocks = WakeLockManager.getInstance(appContext);
+                wakeLocks.acquire(WakeLockManager.RECEIVER, RECEIVER_LOCK_OWNER, 10 * 1000L /* 10 seconds, per-alarm locks take over */);
+                try {
+                    deliver(appContext, intent);
+                } finally {
+                    wakeLocks.release(WakeLockManager.RECEIVER, RECEIVER_LOCK_OWNER);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error while delivering alarm", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    private static void deliver(Context context, Intent intent) {
+        AlarmPayloadStore payloads = AlarmPayloadStore.getInstance(context);
+        if (AlarmQueue.ACTION_QUEUE_TICK.equals(intent.getAction())) {
+            long now = System.currentTimeMillis();
+            List<AlarmRecord> due = new ArrayList<>();
+            boolean anyLate = false;
+            for (AlarmRecord record : AlarmQueue.getInstance(context).pollDue(now)) {
+                if (MissedAlarms.isLate(record, record.at, now)) {
+                    anyLate = true; // Left in the store for the catch-up pass below
+                } else {
+                    due.add(record);
+                }
+            }
+            Log.i(TAG, "Queue tick received, delivering " + due.size() + " multiplexed alarms.");
+            DeliveryDrift drift = DeliveryDrift.getInstance(context);
+            for (AlarmRecord record : due) {
+                drift.record(record.at, record.exact, now);
+                payloads.retain(record); // Keeps the payload readable by later hops once it leaves AlarmStore
+                startAlarmService(context, record.alarmId, record.at);
+            }
+            SchedulingExecutor scheduler = SchedulingExecutor.getInstance(context);
+            scheduler.execute(() -> advanceFired(context, due));
+            if (anyLate) {
+                scheduler.execute(() -> MissedAlarms.catchUp(context, MissedAlarms.REASON_LATE, false));
+            }
         } else {
-            Log.w(TAG, "PowerManager not available, cannot acquire WakeLock.");
+            String alarmId = intent.getStringExtra("alarmId");
+            AlarmRecord record = AlarmStore.getInstance(context).get(alarmId);
+            AlarmRecord payload = record != null ? record : payloads.get(alarmId); // Snoozes live only in the payload store
+            boolean stored = payload != null;
+            if (payload == null && alarmId != null) {
+                payload = fromLegacyIntent(intent); // Armed by an older version that put the payload in the Intent
+            }
+            long now = System.currentTimeMillis();
+            long atTime = intent.getLongExtra("at", payload != null ? payload.at : now);
+            // Catch-up moves or removes a record before ringing it, so a broadcast the store no longer backs is stale
+            boolean stale = record != null
+                    ? record.at != atTime
+                    : stored && RequestCodeTable.getInstance(context).get(alarmId) == RequestCodeTable.NO_CODE;
+            if (stale) {
+                Log.d(TAG, "Alarm " + alarmId + " at " + atTime + " was already handled, ignoring its late broadcast.");
+                return;
+            }
+            if (record != null && MissedAlarms.isLate(record, record.at, now)) {
+                // Held back by Doze or a clock change; sweep every overdue alarm in one pass
+                SchedulingExecutor.getInstance(context).execute(() -> MissedAlarms.catchUp(context, MissedAlarms.REASON_LATE, false));
+                return;
+            }
+            if (payload != null) {
+                DeliveryDrift.getInstance(context).record(atTime, payload.exact, now);
+                payloads.retain(payload);
+            }
+            startAlarmService(context, alarmId, atTime);
+            if (record != null) {
+                SchedulingExecutor.getInstance(context).execute(() -> advanceFired(context, Collections.singletonList(record)));
+            } else if (alarmId != null) {
+                // A snooze, which is never re-armed under the same ID
+                SchedulingExecutor.getInstance(context).execute(() -> freeRequestCode(context, alarmId));
+            }
         }
+    }
 
-        String alarmId = intent.getStringExtra("alarmId");
-        String name = intent.getStringExtra("name");
-        long atTime = intent.getLongExtra("at", System.currentTimeMillis());
-        String extraData = intent.getStringExtra("extra");
-        String soundUri = intent.getStringExtra("soundUri");
-        String uiOptionsJson = intent.getStringExtra("uiOptions"); // Retrieve uiOptions
+    /**
+     * Moves fired recurring alarms on to their next occurrence and drops fired one-shot alarms
+     * from the store, so only the next occurrence is ever scheduled. Runs on the SchedulingExecutor;
+     * alarms cancelled or re-set since they fired are left alone.
+     */
+    private static void advanceFired(Context context, List<AlarmRecord> fired) {
+        long now = System.currentTimeMillis();
+        AlarmStore store = AlarmStore.getInstance(context);
+        List<AlarmRecord> next = new ArrayList<>();
+        List<String> finished = new ArrayList<>();
+        for (AlarmRecord record : fired) {
+            AlarmRecord current = store.get(record.alarmId);
+            if (current == null || current.at != record.at || current.contentHash() != record.contentHash()) {
+                Log.d(TAG, "Alarm " + record.alarmId + " changed since it fired, not advancing it.");
+                continue;
+            }
+            AlarmRecord following = record.nextOccurrence(now);
+            if (following != null) {
+                next.add(following);
+                Log.d(TAG, "Recurring alarm " + record.alarmId + " next fires at " + following.at);
+            } else {
+                finished.add(record.alarmId); // One-shot or exhausted, nothing to re-arm after reboot
+            }
+        }
+        if (!finished.isEmpty()) {
+            store.removeAll(finished);
+            RequestCodeTable codes = RequestCodeTable.getInstance(context);
+            for (String alarmId : finished) {
+                codes.free(alarmId);
+            }
+            codes.flush();
+        }
+        if (!next.isEmpty()) {
+            new AlarmManagerImplementation(context).setAlarms(next);
+        }
+    }
 
-        Log.i(TAG, "Alarm received! Forwarding to AlarmForegroundService. ID: " + (alarmId != null ? alarmId : "No ID") +
-                ", Name: " + (name != null ? name : "N/A"));
+    private static void freeRequestCode(Context context, String alarmId) {
+        RequestCodeTable codes = RequestCodeTable.getInstance(context);
+        codes.free(alarmId);
+        codes.flush();
+    }
+
+    private static AlarmRecord fromLegacyIntent(Intent intent) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = intent.getStringExtra("alarmId");
+        record.name = intent.getStringExtra("name");
+        record.at = intent.getLongExtra("at", System.currentTimeMillis());
+        record.firstAt = record.at;
+        record.extraJson = intent.getStringExtra("extra");
+        record.uiOptionsJson = intent.getStringExtra("uiOptions");
+        if (record.uiOptionsJson != null) {
+            try {
+                record.uiOptions = UiOptions.compile(new JSONObject(record.uiOptionsJson));
+            } catch (JSONException | IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring invalid uiOptions in legacy Intent for alarm " + record.alarmId + ": " + e.getMessage());
+            }
+        }
+        return record;
+    }
+
+    static void startAlarmService(Context context, String alarmId, long atTime) {
+        FireLatency.getInstance(context).mark(alarmId, FireLatency.RECEIVED);
+        WakeLockManager.getInstance(context).acquire(WakeLockManager.ALARM, alarmId, HANDOFF_LOCK_MS);
+        Log.i(TAG, "Alarm received! Forwarding to AlarmForegroundService. ID: " + (alarmId != null ? alarmId : "No ID"));
 
+        // Only the ID travels with the Intent; the service and activity read the payload from AlarmPayloadStore
         Intent serviceIntent = new Intent(context, AlarmForegroundService.class);
         serviceIntent.setAction(AlarmForegroundService.ACTION_SHOW_ALARM);
         serviceIntent.putExtra("alarmId", alarmId);
-        serviceIntent.putExtra("name", name);
         serviceIntent.putExtra("at", atTime);
-        serviceIntent.putExtra("extra", extraData);
-        serviceIntent.putExtra("soundUri", soundUri);
-        if (uiOptionsJson != null) {
-            serviceIntent.putExtra("uiOptions", uiOptionsJson); // Forward uiOptions to service
-        }
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            context.startForegroundService(serviceIntent);
-        } else {
-            context.startService(serviceIntent);
-        }
-        Log.d(TAG, "Started AlarmForegroundService.");
 
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
-            Log.d(TAG, "Partial WakeLock released by Receiver");
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(serviceIntent);
+            } else {
+                context.startService(serviceIntent);
+            }
+            Log.d(TAG, "Started AlarmForegroundService.");
+        } catch (IllegalStateException e) {
+            // ForegroundServiceStartNotAllowedException on Android 12+: only exact and alarm-clock
+            // alarms may start a foreground service from the background, inexact ones cannot ring
+            Log.w(TAG, "Not allowed to start AlarmForegroundService for " + alarmId + ", posting a notification instead.", e);
+            AlarmRecord payload = alarmId != null ? AlarmPayloadStore.getInstance(context).get(alarmId) : null;
+            AlarmForegroundService.postNotificationOnly(context, alarmId, payload != null ? payload.name : null, false);
         }
     }
 }
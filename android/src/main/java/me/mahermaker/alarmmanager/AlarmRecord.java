@@ -0,0 +1,417 @@
+package me.mahermaker.alarmmanager;
+
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+
+/**
+ * Native representation of a scheduled alarm, built once from the JS {@code AlarmConfig}.
+ * Records are treated as immutable once they have been handed to a scheduler.
+ */
+public class AlarmRecord implements Cloneable {
+    private static final String TAG = "AlarmRecord";
+    private static final int FORMAT_VERSION = 1; // Bump when the layout of writeTo/readFrom changes
+    public static final String TIMEOUT_DISMISS = "dismiss";
+    public static final String TIMEOUT_SNOOZE = "snooze";
+    public static final String MISSED_FIRE = "fire";
+    public static final String MISSED_COLLAPSE = "collapse";
+    public static final String MISSED_SKIP = "skip";
+    public static final String PRIORITY_CRITICAL = "critical";
+    public static final String PRIORITY_STANDARD = "standard";
+    public static final String PRIORITY_BACKGROUND = "background";
+    static final long BACKGROUND_TOLERANCE_MS = 15 * 60 * 1000L; // Default batching window for background alarms
+    static final int MAX_TAGS = 16;
+
+    public String alarmId;
+    public long at;
+    public String name = "Alarm";
+    public boolean exact = true;
+    public String extraJson; // Extras as a JSON string, forwarded untouched to the receiver
+    public String uiOptionsJson; // uiOptions as given, returned by getAll()/get() and hashed by sync()
+    public UiOptions uiOptions; // Compiled form applied by the ringing screen, null if none were given
+    public boolean multiplexed; // Kept in the in-process AlarmQueue instead of one OS alarm per record
+    public String repeat; // RRULE subset, null for one-shot alarms
+    public long firstAt; // 'at' as passed to set(); for recurring alarms 'at' moves on while this stays put
+    public int occurrence; // Occurrences already fired, checked against the rule's COUNT
+    public long toleranceMs; // How late the alarm may fire so it can share a wakeup with its neighbours
+    public String soundUri; // Sound to ring with, null for the device's default alarm sound
+    public long prepareTimeoutMs; // How long MediaPlayer may take to prepare before falling back, 0 for the default
+    public long ringTimeoutMs; // How long the alarm rings unattended before timeoutAction applies, 0 to ring until handled
+    public String timeoutAction; // "dismiss" or "snooze"; only meaningful with ringTimeoutMs
+    public String missedPolicy; // "fire", "collapse" or "skip" when the alarm's time passed unseen; null means fire
+    public String priority; // "critical", "standard" or "background"; null means standard
+    public String[] tags; // Groups for cancelByTag/getByTag, indexed by AlarmIndex; null if untagged
+    private Recurrence recurrence; // Parsed form of 'repeat', built on first use
+    private long contentHash; // Lazily computed by contentHash(), 0 until then
+
+    /**
+     * Builds a record from the config passed to {@code set()} or one entry of {@code setMany()}.
+     * @throws IllegalArgumentException with a message suitable for rejecting the call if alarmId or
+     * at is missing, or if repeat or uiOptions are invalid.
+     */
+    public static AlarmRecord fromConfig(JSONObject alarmConfig) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmConfig.isNull("alarmId") ? null : alarmConfig.optString("alarmId");
+        record.at = alarmConfig.optLong("at"); // Use optLong for safety, though we validate in ManagerPlugin
+        record.exact = alarmConfig.optBoolean("exact", true);
+        record.name = alarmConfig.optString("name", "Alarm");
+        record.multiplexed = alarmConfig.optBoolean("multiplexed", false);
+        record.firstAt = record.at;
+        record.toleranceMs = Math.max(0, alarmConfig.optLong("toleranceMs", 0));
+
+        if (record.alarmId == null || record.alarmId.isEmpty() || record.at == 0) {
+            throw new IllegalArgumentException("Invalid alarm configuration: missing alarmId or at.");
+        }
+
+        String priority = alarmConfig.isNull("priority") ? null : alarmConfig.optString("priority");
+        if (priority != null && !priority.isEmpty() && !PRIORITY_STANDARD.equals(priority)) {
+            boolean explicitExact = alarmConfig.has("exact");
+            if (PRIORITY_CRITICAL.equals(priority)) {
+                // Armed on its own with setAlarmClock, never batched
+                if (record.multiplexed || record.toleranceMs > 0 || (explicitExact && !record.exact)) {
+                    throw new IllegalArgumentException("Critical alarm " + record.alarmId
+                            + " must be exact and cannot be multiplexed or have a toleranceMs.");
+                }
+            } else if (PRIORITY_BACKGROUND.equals(priority)) {
+                if (explicitExact && record.exact) {
+                    throw new IllegalArgumentException("Background alarm " + record.alarmId + " cannot be exact.");
+                }
+                record.exact = false;
+                if (record.toleranceMs == 0) {
+                    record.toleranceMs = BACKGROUND_TOLERANCE_MS; // Batched into a shared inexact wakeup by AlarmQueue
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid priority for alarm " + record.alarmId + ": '" + priority
+                        + "' (expected 'critical', 'standard' or 'background')");
+            }
+        }
+        if (priority != null && !priority.isEmpty()) {
+            record.priority = priority;
+        }
+        if (record.toleranceMs > 0) {
+            record.multiplexed = true; // Coalescing happens in AlarmQueue, which owns one shared OS alarm
+        }
+
+        JSONObject extras = alarmConfig.optJSONObject("extra");
+        if (extras != null) {
+            record.extraJson = extras.toString();
+        }
+
+        JSONArray tags = alarmConfig.optJSONArray("tags");
+        if (tags != null && tags.length() > 0) {
+            LinkedHashSet<String> unique = new LinkedHashSet<>();
+            for (int i = 0; i < tags.length(); i++) {
+                String tag = tags.isNull(i) ? null : tags.optString(i, null);
+                if (tag == null || tag.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid tags for alarm " + record.alarmId + ": tags must be non-empty strings");
+                }
+                unique.add(tag);
+            }
+            if (unique.size() > MAX_TAGS) {
+                throw new IllegalArgumentException("Too many tags for alarm " + record.alarmId + " (at most " + MAX_TAGS + ")");
+            }
+            record.tags = unique.toArray(new String[0]);
+        }
+
+        String soundUri = alarmConfig.isNull("soundUri") ? null : alarmConfig.optString("soundUri");
+        if (soundUri != null && !soundUri.isEmpty()) {
+            if (!soundUri.contains(":")) {
+                throw new IllegalArgumentException("Invalid soundUri for alarm " + record.alarmId + ": '" + soundUri
+                        + "' (expected a content://, file:// or android.resource:// URI)");
+            }
+            record.soundUri = soundUri;
+        }
+
+        record.prepareTimeoutMs = Math.max(0, alarmConfig.optLong("prepareTimeoutMs", 0));
+        record.ringTimeoutMs = Math.max(0, alarmConfig.optLong("ringTimeoutMs", 0));
+        String timeoutAction = alarmConfig.isNull("timeoutAction") ? null : alarmConfig.optString("timeoutAction");
+        if (timeoutAction != null && !timeoutAction.isEmpty()) {
+            if (!TIMEOUT_DISMISS.equals(timeoutAction) && !TIMEOUT_SNOOZE.equals(timeoutAction)) {
+                throw new IllegalArgumentException("Invalid timeoutAction for alarm " + record.alarmId + ": '" + timeoutAction
+                        + "' (expected 'dismiss' or 'snooze')");
+            }
+            record.timeoutAction = timeoutAction;
+        }
+
+        String missedPolicy = alarmConfig.isNull("missedPolicy") ? null : alarmConfig.optString("missedPolicy");
+        if (missedPolicy != null && !missedPolicy.isEmpty()) {
+            if (!MISSED_FIRE.equals(missedPolicy) && !MISSED_COLLAPSE.equals(missedPolicy) && !MISSED_SKIP.equals(missedPolicy)) {
+                throw new IllegalArgumentException("Invalid missedPolicy for alarm " + record.alarmId + ": '" + missedPolicy
+                        + "' (expected 'fire', 'collapse' or 'skip')");
+            }
+            record.missedPolicy = missedPolicy;
+        }
+
+        JSONObject uiOptions = alarmConfig.optJSONObject("uiOptions");
+        if (uiOptions != null) {
+            record.uiOptionsJson = uiOptions.toString();
+            record.uiOptions = UiOptions.compile(uiOptions); // Rejects bad colors now rather than on the ringing screen
+        }
+
+        String repeat = alarmConfig.isNull("repeat") ? null : alarmConfig.optString("repeat");
+        if (repeat != null && !repeat.isEmpty()) {
+            try {
+                record.recurrence = Recurrence.parse(repeat);
+                record.repeat = repeat;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid repeat rule for alarm " + record.alarmId + ": " + e.getMessage());
+            }
+            long now = System.currentTimeMillis();
+            if (record.at <= now) {
+                // Anchor lies in the past (e.g. "every day at 7:00" set at noon), start from the next occurrence
+                record.at = record.recurrence.nextAfter(record.firstAt, now, 0);
+                if (record.at < 0) {
+                    throw new IllegalArgumentException("Repeat rule for alarm " + record.alarmId + " has no future occurrences.");
+                }
+            }
+        }
+        return record;
+    }
+
+    /**
+     * @return the parsed repeat rule, or null for one-shot alarms.
+     */
+    public Recurrence getRecurrence() {
+        if (recurrence == null && repeat != null) {
+            recurrence = Recurrence.parse(repeat); // Validated in fromConfig, so stored rules always parse
+        }
+        return recurrence;
+    }
+
+    /**
+     * Computes the occurrence that follows the one that just fired, evaluated in the device time zone.
+     * @return a copy of this record moved to the next trigger time, or null if the alarm does not
+     * repeat or its rule is exhausted.
+     */
+    public AlarmRecord nextOccurrence(long now) {
+        Recurrence rule = getRecurrence();
+        if (rule == null) {
+            return null;
+        }
+        long nextAt = rule.nextAfter(firstAt, Math.max(at, now), occurrence + 1);
+        if (nextAt < 0) {
+            return null;
+        }
+        AlarmRecord next = movedTo(nextAt);
+        next.occurrence = occurrence + 1;
+        return next; // contentHash is unaffected: it covers firstAt, not at
+    }
+
+    /**
+     * @return a copy of this record that triggers at {@code at} instead.
+     */
+    public AlarmRecord movedTo(long at) {
+        try {
+            AlarmRecord moved = (AlarmRecord) clone();
+            moved.at = at;
+            return moved;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return the record in the same shape as the JS {@code AlarmConfig} it was built from.
+     */
+    public JSObject toJSObject() {
+        JSObject config = new JSObject();
+        config.put("alarmId", alarmId);
+        config.put("at", at);
+        config.put("name", name);
+        config.put("exact", exact);
+        config.put("multiplexed", multiplexed);
+        if (toleranceMs > 0) {
+            config.put("toleranceMs", toleranceMs);
+        }
+        if (repeat != null) {
+            config.put("repeat", repeat);
+        }
+        if (soundUri != null) {
+            config.put("soundUri", soundUri);
+        }
+        if (prepareTimeoutMs > 0) {
+            config.put("prepareTimeoutMs", prepareTimeoutMs);
+        }
+        if (ringTimeoutMs > 0) {
+            config.put("ringTimeoutMs", ringTimeoutMs);
+        }
+        if (timeoutAction != null) {
+            config.put("timeoutAction", timeoutAction);
+        }
+        if (missedPolicy != null) {
+            config.put("missedPolicy", missedPolicy);
+        }
+        if (priority != null) {
+            config.put("priority", priority);
+        }
+        if (tags != null) {
+            JSArray tagList = new JSArray();
+            for (String tag : tags) {
+                tagList.put(tag);
+            }
+            config.put("tags", tagList);
+        }
+        try {
+            if (extraJson != null) {
+                config.put("extra", new JSObject(extraJson));
+            }
+            if (uiOptionsJson != null) {
+                config.put("uiOptions", new JSObject(uiOptionsJson));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Stored JSON for alarm " + alarmId + " is unreadable", e);
+        }
+        return config;
+    }
+
+    /**
+     * 64-bit FNV-1a hash over every field that affects how the alarm is scheduled or shown.
+     * Two records with the same ID and hash are treated as identical by {@code sync()}.
+     */
+    public long contentHash() {
+        if (contentHash == 0) {
+            long hash = 0xcbf29ce484222325L;
+            hash = mix(hash, firstAt); // Not 'at', so a recurring alarm still matches its config once it has moved on
+            hash = mix(hash, name);
+            hash = mix(hash, exact ? 1 : 0);
+            hash = mix(hash, extraJson);
+            hash = mix(hash, uiOptionsJson);
+            hash = mix(hash, multiplexed ? 1 : 0);
+            hash = mix(hash, repeat);
+            hash = mix(hash, toleranceMs);
+            hash = mix(hash, soundUri);
+            hash = mix(hash, prepareTimeoutMs);
+            hash = mix(hash, ringTimeoutMs);
+            hash = mix(hash, timeoutAction);
+            hash = mix(hash, missedPolicy);
+            hash = mix(hash, priority);
+            if (tags != null) {
+                hash = mix(hash, (long) tags.length);
+                for (String tag : tags) {
+                    hash = mix(hash, tag);
+                }
+            }
+            contentHash = hash != 0 ? hash : 1;
+        }
+        return contentHash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1L);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash, value.length()); // Length terminator keeps adjacent fields from running together
+    }
+
+    /**
+     * Writes the record in the compact binary form used by AlarmStore.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, alarmId);
+        out.writeLong(at);
+        writeString(out, name);
+        out.writeBoolean(exact);
+        writeString(out, extraJson);
+        writeString(out, uiOptionsJson);
+        out.writeBoolean(multiplexed);
+        writeString(out, repeat);
+        out.writeLong(firstAt);
+        out.writeInt(occurrence);
+        out.writeLong(toleranceMs);
+        out.writeBoolean(uiOptions != null);
+        if (uiOptions != null) {
+            uiOptions.writeTo(out);
+        }
+        writeString(out, soundUri);
+        out.writeLong(prepareTimeoutMs);
+        out.writeLong(ringTimeoutMs);
+        writeString(out, timeoutAction);
+        writeString(out, missedPolicy);
+        writeString(out, priority);
+        out.writeInt(tags != null ? tags.length : 0);
+        if (tags != null) {
+            for (String tag : tags) {
+                writeString(out, tag);
+            }
+        }
+    }
+
+    public static AlarmRecord readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported alarm record version: " + version);
+        }
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = readString(in);
+        record.at = in.readLong();
+        record.name = readString(in);
+        record.exact = in.readBoolean();
+        record.extraJson = readString(in);
+        record.uiOptionsJson = readString(in);
+        record.multiplexed = in.readBoolean();
+        record.repeat = readString(in);
+        record.firstAt = in.readLong();
+        record.occurrence = in.readInt();
+        record.toleranceMs = in.readLong();
+        record.uiOptions = in.readBoolean() ? UiOptions.readFrom(in) : null;
+        record.soundUri = readString(in);
+        record.prepareTimeoutMs = in.readLong();
+        record.ringTimeoutMs = in.readLong();
+        record.timeoutAction = readString(in);
+        record.missedPolicy = readString(in);
+        record.priority = readString(in);
+        int tagCount = in.readInt();
+        if (tagCount > 0) {
+            record.tags = new String[tagCount];
+            for (int i = 0; i < tagCount; i++) {
+                record.tags[i] = readString(in);
+            }
+        }
+        return record;
+    }
+
+    // Length-prefixed UTF-8, -1 for null. Unlike writeUTF this has no 64 KB limit on extras.
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,148 @@
+package me.mahermaker.alarmmanager;
+
+import android.app.AlarmManager;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Schedules the snooze of a ringing alarm: a copy of its payload under {@code <alarmId>_snooze},
+ * an exact OS alarm for it and a silent "next alarm at" notification. Used by the Snooze button
+ * and by ring timeouts that auto-snooze.
+ */
+public final class AlarmSnoozer {
+    private static final String TAG = "AlarmSnoozer";
+    public static final int SNOOZE_DURATION_MS = 10 * 60 * 1000; // 10 minutes
+    private static final int SNOOZE_NOTIFICATION_ID = AlarmForegroundService.SERVICE_NOTIFICATION_ID + 1;
+
+    private AlarmSnoozer() {}
+
+    /**
+     * @return the time the snooze will ring at.
+     */
+    public static long schedule(Context context, String alarmId, String alarmName) {
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        long snoozeTime = System.currentTimeMillis() + SNOOZE_DURATION_MS;
+
+        String nextSnoozeName;
+        if (alarmName != null && alarmName.endsWith(" (Snoozed)")) {
+            nextSnoozeName = alarmName;
+        } else if (alarmName != null) {
+            nextSnoozeName = alarmName + " (Snoozed)";
+        } else {
+            nextSnoozeName = "Alarm (Snoozed)";
+        }
+
+        // The snooze keeps the original payload under its own ID; its Intent carries only that ID
+        AlarmPayloadStore payloads = AlarmPayloadStore.getInstance(context);
+        AlarmRecord original = payloads.get(alarmId);
+        AlarmRecord snoozed = new AlarmRecord();
+        snoozed.alarmId = alarmId + "_snooze";
+        snoozed.name = nextSnoozeName;
+        snoozed.at = snoozeTime;
+        snoozed.firstAt = snoozeTime;
+        if (original != null) {
+            snoozed.extraJson = original.extraJson;
+            snoozed.uiOptionsJson = original.uiOptionsJson;
+            snoozed.uiOptions = original.uiOptions;
+            snoozed.soundUri = original.soundUri;
+            snoozed.prepareTimeoutMs = original.prepareTimeoutMs;
+            snoozed.ringTimeoutMs = original.ringTimeoutMs;
+            snoozed.timeoutAction = original.timeoutAction;
+            snoozed.missedPolicy = original.missedPolicy;
+            snoozed.priority = original.priority;
+            snoozed.tags = original.tags;
+        }
+        payloads.retain(snoozed);
+        payloads.release(alarmId);
+
+        Intent snoozeIntent = new Intent(context, AlarmReceiver.class);
+        snoozeIntent.setAction("SNOOZE_ALARM_ACTION_" + alarmId);
+        snoozeIntent.putExtra("alarmId", snoozed.alarmId);
+        snoozeIntent.putExtra("at", snoozeTime);
+
+        int pendingIntentFlags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            pendingIntentFlags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+
+        // The snooze has its own ID, so it gets its own request code instead of the alarm's code + 1
+        RequestCodeTable codes = RequestCodeTable.getInstance(context);
+        int requestCode = codes.intern(snoozed.alarmId);
+        codes.flush();
+        PendingIntent pendingSnoozeBroadcastIntent = PendingIntent.getBroadcast(
+                context,
+                requestCode,
+                snoozeIntent,
+                pendingIntentFlags
+        );
+
+        AlarmManager androidAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (androidAlarmManager != null) {
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !androidAlarmManager.canScheduleExactAlarms()) {
+                    Log.w(TAG, "Cannot schedule exact alarms for snooze. App needs SCHEDULE_EXACT_ALARM permission or user disabled it.");
+                }
+
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    androidAlarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, snoozeTime, pendingSnoozeBroadcastIntent);
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    androidAlarmManager.setExact(AlarmManager.RTC_WAKEUP, snoozeTime, pendingSnoozeBroadcastIntent);
+                } else {
+                    androidAlarmManager.set(AlarmManager.RTC_WAKEUP, snoozeTime, pendingSnoozeBroadcastIntent);
+                }
+                Log.i(TAG, "Snooze alarm scheduled for ID: " + alarmId + "_snooze" + " at " + new java.util.Date(snoozeTime));
+
+                if (notificationManager != null) {
+                    SimpleDateFormat sdf = new SimpleDateFormat("HH:mm", Locale.getDefault());
+                    String formattedSnoozeTime = sdf.format(new Date(snoozeTime));
+
+                    Intent mainAppIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+                    PendingIntent mainAppPendingIntent = null;
+                    if (mainAppIntent != null) {
+                        mainAppIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+                        mainAppPendingIntent = PendingIntent.getActivity(
+                                context,
+                                SNOOZE_NOTIFICATION_ID + 100,
+                                mainAppIntent,
+                                PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0)
+                        );
+                    } else {
+                        Log.e(TAG, "Could not get launch intent for package to create snooze notification content intent.");
+                    }
+
+                    NotificationCompat.Builder snoozeNotificationBuilder = new NotificationCompat.Builder(context, AlarmReceiver.ALARM_CHANNEL_ID)
+                            .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                            .setContentTitle(nextSnoozeName)
+                            .setContentText("Next alarm at " + formattedSnoozeTime)
+                            .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                            .setContentIntent(mainAppPendingIntent)
+                            .setAutoCancel(true)
+                            .setSilent(true);
+
+                    notificationManager.notify(SNOOZE_NOTIFICATION_ID, snoozeNotificationBuilder.build());
+                    Log.d(TAG, "Snooze notification posted for " + formattedSnoozeTime);
+                }
+
+            } catch (SecurityException se) {
+                Log.e(TAG, "SecurityException while scheduling snooze alarm.", se);
+            } catch (Exception e) {
+                Log.e(TAG, "Exception while scheduling snooze alarm.", e);
+            }
+        } else {
+            Log.e(TAG, "AlarmManager service is null, cannot schedule snooze.");
+        }
+
+        return snoozeTime;
+    }
+}
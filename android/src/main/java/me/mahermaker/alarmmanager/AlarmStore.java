@@ -0,0 +1,273 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durable record of every scheduled alarm, used to re-arm alarms after a reboot.
+ * Mutations are appended to a binary log; once the log grows past {@link #COMPACT_THRESHOLD}
+ * operations it is folded into a snapshot and truncated. Loading replays the snapshot and then
+ * the log, tolerating a torn final entry from a crash mid-write.
+ */
+public class AlarmStore {
+    private static final String TAG = "AlarmStore";
+    private static final String DIR_NAME = "alarm_store";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "log.bin";
+    private static final int SNAPSHOT_MAGIC = 0x414C5331; // "ALS1"
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int COMPACT_THRESHOLD = 512; // Log operations before folding into a snapshot
+
+    private static AlarmStore instance;
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final AlarmIndex records = new AlarmIndex(); // Live view of the log, queried without touching disk
+    private DataOutputStream log;
+    private int logOps;
+
+    public static synchronized AlarmStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmStore(new File(DeviceStorage.get(context).getFilesDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    // Opens the store kept in dir
+    AlarmStore(File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create store directory: " + dir);
+        }
+        this.snapshotFile = new File(dir, SNAPSHOT_FILE);
+        this.logFile = new File(dir, LOG_FILE);
+        load();
+    }
+
+    public synchronized void put(AlarmRecord record) {
+        putAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends all records to the log with a single flush.
+     */
+    public synchronized void putAll(List<AlarmRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            DataOutputStream out = openLog();
+            for (AlarmRecord record : batch) {
+                records.put(record);
+                out.writeByte(OP_PUT);
+                record.writeTo(out);
+                logOps++;
+            }
+            out.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append " + batch.size() + " alarms to store", e);
+        }
+        compactIfNeeded();
+    }
+
+    public synchronized boolean remove(String alarmId) {
+        return removeAll(Collections.singletonList(alarmId)).get(0) != null;
+    }
+
+    /**
+     * Removes all given IDs, appending the removals to the log with a single flush.
+     * @return the removed record for each ID, or null where the ID was not stored.
+     */
+    public synchronized List<AlarmRecord> removeAll(List<String> alarmIds) {
+        List<AlarmRecord> removed = new ArrayList<>(alarmIds.size());
+        try {
+            DataOutputStream out = null;
+            for (String alarmId : alarmIds) {
+                AlarmRecord record = records.remove(alarmId);
+                removed.add(record);
+                if (record == null) {
+                    continue;
+                }
+                if (out == null) {
+                    out = openLog();
+                }
+                out.writeByte(OP_REMOVE);
+                AlarmRecord.writeString(out, alarmId);
+                logOps++;
+            }
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append removals to store", e);
+        }
+        while (removed.size() < alarmIds.size()) {
+            removed.add(null); // Keep results aligned with the input if the log write failed midway
+        }
+        compactIfNeeded();
+        return removed;
+    }
+
+    public synchronized AlarmRecord get(String alarmId) {
+        return records.get(alarmId);
+    }
+
+    public synchronized boolean contains(String alarmId) {
+        return records.contains(alarmId);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * @return a copy of every stored record, ordered by trigger time.
+     */
+    public synchronized List<AlarmRecord> getAll() {
+        return records.values();
+    }
+
+    /**
+     * @see AlarmIndex#range(long, long, Long, String, int)
+     */
+    public synchronized List<AlarmRecord> getBetween(long from, long to, Long afterAt, String afterId, int limit) {
+        return records.range(from, to, afterAt, afterId, limit);
+    }
+
+    /**
+     * @see AlarmIndex#idsWithTag(String)
+     */
+    public synchronized List<String> idsWithTag(String tag) {
+        return records.idsWithTag(tag);
+    }
+
+    /**
+     * @see AlarmIndex#withTag(String)
+     */
+    public synchronized List<AlarmRecord> getByTag(String tag) {
+        return records.withTag(tag);
+    }
+
+    public synchronized int countByTag(String tag) {
+        return records.countWithTag(tag);
+    }
+
+    /**
+     * Writes all live records to a fresh snapshot and truncates the log.
+     */
+    public synchronized void compact() {
+        closeLog();
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(records.size());
+            for (AlarmRecord record : records.values()) {
+                record.writeTo(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write snapshot, keeping log.", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            Log.e(TAG, "Failed to replace snapshot, keeping log.");
+            tmp.delete();
+            return;
+        }
+        // Replaying the old log over the new snapshot would be harmless, so a crash here is safe
+        logFile.delete();
+        logOps = 0;
+        Log.d(TAG, "Compacted store to " + records.size() + " records.");
+    }
+
+    private void compactIfNeeded() {
+        if (logOps >= COMPACT_THRESHOLD && logOps > records.size()) {
+            compact();
+        }
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        if (log == null) {
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+        }
+        return log;
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing store log.", e);
+            }
+            log = null;
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Bad snapshot header");
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    AlarmRecord record = AlarmRecord.readFrom(in);
+                    records.put(record);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Snapshot unreadable, continuing with " + records.size() + " records recovered.", e);
+            }
+        }
+
+        boolean tornTail = false;
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                while (true) {
+                    int op = in.read();
+                    if (op == -1) {
+                        break;
+                    }
+                    if (op == OP_PUT) {
+                        AlarmRecord record = AlarmRecord.readFrom(in);
+                        records.put(record);
+                    } else if (op == OP_REMOVE) {
+                        records.remove(AlarmRecord.readString(in));
+                    } else {
+                        throw new IOException("Unknown log op: " + op);
+                    }
+                    logOps++;
+                }
+            } catch (EOFException e) {
+                tornTail = true;
+                Log.w(TAG, "Store log ends with a partial entry, discarding it.");
+            } catch (IOException e) {
+                tornTail = true;
+                Log.e(TAG, "Store log unreadable past entry " + logOps + ", discarding the rest.", e);
+            }
+        }
+
+        if (tornTail) {
+            compact(); // Rewrite a clean snapshot so new appends don't follow garbage
+        }
+        Log.d(TAG, "Loaded " + records.size() + " alarms (" + logOps + " log ops) in "
+                + (System.currentTimeMillis() - start) + " ms.");
+    }
+}
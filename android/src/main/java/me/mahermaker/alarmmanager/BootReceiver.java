@@ -3,48 +3,115 @@ package me.mahermaker.alarmmanager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.Settings;
 import android.util.Log;
 
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class BootReceiver extends BroadcastReceiver {
 
     private static final String TAG = "BootReceiver";
+    private static final String PREFS_NAME = "me.mahermaker.alarmmanager.BootReceiver";
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (intent != null && Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            Log.d(TAG, "Boot completed, attempting to reschedule alarms.");
-
-            // TODO: Implement logic to retrieve stored alarms
-            // For example, using AlarmStorage class (to be created)
-            // AlarmStorage alarmStorage = new AlarmStorage(context);
-            // List<Alarm> alarms = alarmStorage.getAllAlarms();
-            //
-            // AlarmHelper alarmHelper = new AlarmHelper(context);
-            // for (Alarm alarm : alarms) {
-            //     if (alarm.isEnabled()) {
-            //         Log.d(TAG, "Rescheduling alarm: " + alarm.getName());
-            //         alarmHelper.scheduleAlarm(alarm);
-            //     }
-            // }
-
-            // For now, let's just log that we would be rescheduling.
-            // This part will be fleshed out once AlarmStorage and AlarmHelper have more functionality.
-            Log.i(TAG, "Placeholder: Logic to re-schedule alarms would go here.");
-
-            // Example: Reschedule a test alarm (REMOVE THIS IN ACTUAL IMPLEMENTATION)
-            // This is just to demonstrate that the BootReceiver is working.
-            // Alarm testAlarm = new Alarm();
-            // testAlarm.setId(999); // Example ID
-            // testAlarm.setHour(7);
-            // testAlarm.setMinute(0);
-            // testAlarm.setName("Test Boot Alarm");
-            // testAlarm.setEnabled(true);
-            //
-            // AlarmHelper alarmHelper = new AlarmHelper(context);
-            // alarmHelper.scheduleAlarm(testAlarm);
-            // Log.d(TAG, "Scheduled a test alarm from BootReceiver.");
+        String action = intent != null ? intent.getAction() : null;
+        boolean locked = Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action);
+        if (locked || Intent.ACTION_BOOT_COMPLETED.equals(action) || "android.intent.action.QUICKBOOT_POWERON".equals(action)) {
+            Log.d(TAG, "Boot completed (" + action + "), attempting to reschedule alarms.");
+            final Context appContext = context.getApplicationContext();
+            int bootCount = getBootCount(appContext);
+            SharedPreferences prefs = DeviceStorage.get(appContext).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            if (!locked && bootCount >= 0 && prefs.getInt("bootCount", -1) == bootCount) {
+                Log.d(TAG, "Alarms were already rescheduled before unlock during this boot.");
+                return;
+            }
+            final PendingResult pendingResult = goAsync();
+            // Loading the store and re-arming thousands of alarms must stay off the main thread,
+            // and on the thread every other schedule write goes through
+            SchedulingExecutor.getInstance(appContext).execute(() -> {
+                try {
+                    rescheduleAll(appContext, locked, bootCount);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error while rescheduling alarms after boot", e);
+                } finally {
+                    pendingResult.finish();
+                }
+            });
         } else {
             Log.w(TAG, "Received intent with unexpected action: " + (intent != null ? intent.getAction() : "null intent"));
         }
     }
+
+    // Settings.Global.BOOT_COUNT, or -1 where unavailable
+    private static int getBootCount(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return -1;
+        }
+        return Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+
+    private static void rescheduleAll(Context context, boolean locked, int bootCount) {
+        long startElapsed = SystemClock.elapsedRealtime();
+        // Alarms that came due while the device was off are settled first, so they are not re-armed in the past
+        MissedAlarms.catchUp(context, MissedAlarms.REASON_BOOT, false);
+        AlarmManagerImplementation implementation = new AlarmManagerImplementation(context);
+
+        List<AlarmRecord> plain = new ArrayList<>();
+        for (AlarmRecord record : AlarmStore.getInstance(context).getAll()) {
+            if (!record.multiplexed) {
+                plain.add(record); // AlarmQueue rebuilt its heap from the store; it only needs one OS alarm below
+            }
+        }
+        int rearmed = 0;
+        int failed = 0;
+        for (boolean success : implementation.scheduleRecords(plain)) {
+            if (success) {
+                rearmed++;
+            } else {
+                failed++;
+            }
+        }
+        AlarmQueue queue = AlarmQueue.getInstance(context);
+        queue.rearm();
+        rearmed += queue.size();
+
+        long doneElapsed = SystemClock.elapsedRealtime();
+        Log.i(TAG, "Rescheduled " + rearmed + " alarms (" + failed + " failed) in " + (doneElapsed - startElapsed)
+                + " ms, " + doneElapsed + " ms after boot.");
+
+        DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong("bootToRearmedMs", doneElapsed) // elapsedRealtime counts from boot
+                .putLong("rescheduleDurationMs", doneElapsed - startElapsed)
+                .putInt("rearmedCount", rearmed)
+                .putInt("failedCount", failed)
+                .putLong("completedAt", System.currentTimeMillis())
+                .putBoolean("beforeUnlock", locked)
+                .putInt("bootCount", bootCount)
+                .apply();
+    }
+
+    /**
+     * @return metrics from the most recent post-boot reschedule, or an empty object if none ran yet.
+     */
+    public static JSObject getLastRescheduleStats(Context context) {
+        SharedPreferences prefs = DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        JSObject stats = new JSObject();
+        if (!prefs.contains("completedAt")) {
+            return stats;
+        }
+        stats.put("bootToRearmedMs", prefs.getLong("bootToRearmedMs", 0));
+        stats.put("rescheduleDurationMs", prefs.getLong("rescheduleDurationMs", 0));
+        stats.put("rearmedCount", prefs.getInt("rearmedCount", 0));
+        stats.put("failedCount", prefs.getInt("failedCount", 0));
+        stats.put("completedAt", prefs.getLong("completedAt", 0));
+        stats.put("beforeUnlock", prefs.getBoolean("beforeUnlock", false));
+        return stats;
+    }
 }
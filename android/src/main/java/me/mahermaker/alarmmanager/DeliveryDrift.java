@@ -0,0 +1,83 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Records how late alarms are delivered: the delay between the intended {@code at} and the moment
+ * AlarmReceiver runs. Samples are split by exact vs inexact scheduling and by whether the device
+ * was idle (Doze) when the alarm arrived, and persisted so lateness can be compared across devices.
+ */
+public class DeliveryDrift {
+    private static final String TAG = "DeliveryDrift";
+    private static final String PREFS_NAME = "me.mahermaker.alarmmanager.DeliveryDrift";
+
+    // Indexed by (exact ? 0 : 2) + (idle ? 1 : 0)
+    private static final String[] SERIES = { "exact.active", "exact.idle", "inexact.active", "inexact.idle" };
+
+    private static DeliveryDrift instance;
+
+    private final SharedPreferences prefs;
+    private final PowerManager powerManager;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[SERIES.length];
+
+    public static synchronized DeliveryDrift getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeliveryDrift(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DeliveryDrift(Context context) {
+        this.prefs = DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        for (int i = 0; i < SERIES.length; i++) {
+            histograms[i] = LatencyHistogram.decode(prefs.getString(SERIES[i], null));
+        }
+    }
+
+    /**
+     * Records one delivery. Alarms delivered early (possible inside an inexact window) count as 0 ms.
+     * @return the drift in ms.
+     */
+    public synchronized long record(long intendedAt, boolean exact, long deliveredAt) {
+        long drift = deliveredAt - intendedAt;
+        boolean idle = isDeviceIdle();
+        int series = (exact ? 0 : 2) + (idle ? 1 : 0);
+        histograms[series].add(drift);
+        prefs.edit().putString(SERIES[series], histograms[series].encode()).apply();
+        Log.d(TAG, "Alarm delivered " + drift + " ms after its trigger time (" + SERIES[series] + ")");
+        return drift;
+    }
+
+    /**
+     * @return {@code {exact: {active, idle}, inexact: {active, idle}}}, one histogram each.
+     */
+    public synchronized JSObject getStats() {
+        JSObject exact = new JSObject();
+        exact.put("active", histograms[0].toJSObject());
+        exact.put("idle", histograms[1].toJSObject());
+        JSObject inexact = new JSObject();
+        inexact.put("active", histograms[2].toJSObject());
+        inexact.put("idle", histograms[3].toJSObject());
+        JSObject stats = new JSObject();
+        stats.put("exact", exact);
+        stats.put("inexact", inexact);
+        return stats;
+    }
+
+    private boolean isDeviceIdle() {
+        if (powerManager == null) {
+            return false;
+        }
+        if (powerManager.isDeviceIdleMode()) {
+            return true;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && powerManager.isDeviceLightIdleMode();
+    }
+}
@@ -0,0 +1,30 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.os.Build;
+
+/**
+ * Resolves where the plugin keeps its state. On Android 7+ that is device-protected storage, which
+ * is readable before the user unlocks after a reboot, so BootReceiver can re-arm alarms on
+ * {@code LOCKED_BOOT_COMPLETED} and the ringing path (receiver, service, activity) works before
+ * unlock. Every file and preference the plugin owns is resolved through {@link #get(Context)}.
+ */
+public final class DeviceStorage {
+
+    private static Context storageContext;
+
+    private DeviceStorage() {}
+
+    /**
+     * @return the context whose files and preferences hold the plugin's state.
+     */
+    public static synchronized Context get(Context context) {
+        if (storageContext == null) {
+            Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+            storageContext = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                    ? appContext.createDeviceProtectedStorageContext()
+                    : appContext; // No Direct Boot, credential storage is always available
+        }
+        return storageContext;
+    }
+}
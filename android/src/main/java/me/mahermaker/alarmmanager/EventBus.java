@@ -0,0 +1,124 @@
+package me.mahermaker.alarmmanager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-process channel from the components that raise events (receiver, service, ringing activity)
+ * to the plugin, replacing the static plugin reference. Events are posted by EventOutbox, which is
+ * the only producer: it posts under its own lock, so the ring buffer needs no locking or CAS on the
+ * write side. The ring is drained on the main looper and handed to subscribers, which are held
+ * weakly so the bus never keeps a destroyed plugin (and its Bridge, WebView and Activity) alive.
+ * Nothing is lost when the ring is full or nobody is subscribed: the events are still undelivered
+ * in the outbox, which re-posts them.
+ */
+public final class EventBus {
+    private static final String TAG = "EventBus";
+    private static final int CAPACITY = 256; // Power of two
+    private static final int MASK = CAPACITY - 1;
+
+    private static final EventBus instance = new EventBus();
+
+    interface Subscriber {
+        /**
+         * Called on the main thread with the events drained in one turn, oldest first.
+         */
+        void onEvents(List<EventOutbox.Event> events);
+    }
+
+    private final AtomicReferenceArray<EventOutbox.Event> ring = new AtomicReferenceArray<>(CAPACITY);
+    private volatile long head; // Next slot to drain, written by the main thread only
+    private volatile long tail; // Next slot to fill, written by the producer only
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final CopyOnWriteArrayList<WeakReference<Subscriber>> subscribers = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable drain = this::drain;
+
+    public static EventBus getInstance() {
+        return instance;
+    }
+
+    private EventBus() {
+    }
+
+    void subscribe(Subscriber subscriber) {
+        unsubscribe(subscriber);
+        subscribers.add(new WeakReference<>(subscriber));
+    }
+
+    void unsubscribe(Subscriber subscriber) {
+        for (WeakReference<Subscriber> ref : subscribers) {
+            Subscriber current = ref.get();
+            if (current == null || current == subscriber) {
+                subscribers.remove(ref);
+            }
+        }
+    }
+
+    /**
+     * Adds an event to the ring and schedules a drain. Must only be called by the single producer.
+     * @return false if the ring is full; the caller keeps the event and posts it again later.
+     */
+    boolean post(EventOutbox.Event event) {
+        long t = tail;
+        if (t - head >= CAPACITY) {
+            scheduleDrain();
+            return false;
+        }
+        ring.set((int) (t & MASK), event);
+        tail = t + 1; // Publishes the slot to the drain
+        scheduleDrain();
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            handler.post(drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false); // Posts from here on schedule another turn
+        long h = head;
+        long t = tail;
+        List<EventOutbox.Event> events = new ArrayList<>((int) (t - h));
+        Set<EventOutbox.Event> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (; h < t; h++) {
+            int slot = (int) (h & MASK);
+            EventOutbox.Event event = ring.get(slot);
+            ring.set(slot, null);
+            // The outbox may post an event twice when replaying; deliver it once
+            if (event != null && !event.delivered && seen.add(event)) {
+                events.add(event);
+            }
+        }
+        head = h; // Frees the slots for the producer
+        if (events.isEmpty()) {
+            return;
+        }
+        boolean delivered = false;
+        for (WeakReference<Subscriber> ref : subscribers) {
+            Subscriber subscriber = ref.get();
+            if (subscriber == null) {
+                subscribers.remove(ref);
+                continue;
+            }
+            subscriber.onEvents(events);
+            delivered = true;
+        }
+        if (!delivered) {
+            Log.d(TAG, "No subscriber, " + events.size() + " events left in the outbox for replay.");
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends events from the EventOutbox to JS listeners. Events nobody is listening for yet are kept
+ * in a bounded in-memory buffer (overall cap plus optional per-event limits) and handed over when a
+ * listener for them is added, instead of being retained without limit by the bridge. Evicted events
+ * are still in the outbox and can be read with {@code getPendingEvents}.
+ * With a batch window set, events raised within the window are coalesced into one
+ * {@code alarmEvents} payload when the app listens for it, so an alarm burst costs one bridge call.
+ */
+public class EventDispatcher {
+    private static final String TAG = "EventDispatcher";
+    private static final String PREFS_NAME = "me.mahermaker.alarmmanager.EventDispatcher";
+    public static final String BATCH_EVENT = "alarmEvents";
+    public static final String DROP_OLDEST = "dropOldest";
+    public static final String DROP_NEWEST = "dropNewest";
+    private static final int DEFAULT_MAX_RETAINED = 100;
+    private static final int MAX_RETAINED_LIMIT = 1000;
+    private static final long MAX_BATCH_WINDOW_MS = 5000;
+    private static final int MAX_BATCH_SIZE = 200; // Flushed early past this, keeps one payload reasonably small
+
+    private final ManagerPlugin plugin;
+    private final SharedPreferences prefs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushBatch = this::flushBatch;
+
+    private int maxRetained;
+    private String evictionPolicy;
+    private final HashMap<String, Integer> perTypeLimits = new HashMap<>();
+    private long batchWindowMs; // 0 = deliver every event on its own
+
+    private final LinkedList<Pending> retained = new LinkedList<>(); // No listener yet, oldest first
+    private final HashMap<String, Integer> retainedCounts = new HashMap<>();
+    private final List<Pending> batch = new ArrayList<>();
+    private long evicted; // Retained events dropped since the plugin loaded
+
+    private static final class Pending {
+        final String name;
+        final JSObject data;
+
+        Pending(String name, JSObject data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    EventDispatcher(ManagerPlugin plugin, Context context) {
+        this.plugin = plugin;
+        this.prefs = DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        maxRetained = prefs.getInt("maxRetained", DEFAULT_MAX_RETAINED);
+        evictionPolicy = prefs.getString("evictionPolicy", DROP_OLDEST);
+        batchWindowMs = prefs.getLong("batchWindowMs", 0);
+        // Stored as "name=limit,name=limit"
+        String limits = prefs.getString("perTypeLimits", "");
+        for (String entry : limits.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                perTypeLimits.put(entry.substring(0, separator), Integer.parseInt(entry.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Discarding unreadable per-type limit: " + entry);
+            }
+        }
+    }
+
+    // Fixed settings and nothing persisted, for tests; configure() is not available
+    EventDispatcher(ManagerPlugin plugin, int maxRetained, String evictionPolicy, Map<String, Integer> perTypeLimits) {
+        this.plugin = plugin;
+        this.prefs = null;
+        this.maxRetained = maxRetained;
+        this.evictionPolicy = evictionPolicy;
+        this.perTypeLimits.putAll(perTypeLimits);
+    }
+
+    /**
+     * Applies the options present in {@code options} and persists the result, so events replayed
+     * on a cold start follow the same settings.
+     * @throws IllegalArgumentException if an option is out of range.
+     */
+    public synchronized void configure(JSObject options) {
+        int newMaxRetained = options.has("maxRetained") ? options.optInt("maxRetained", -1) : maxRetained;
+        if (newMaxRetained < 0 || newMaxRetained > MAX_RETAINED_LIMIT) {
+            throw new IllegalArgumentException("maxRetained must be between 0 and " + MAX_RETAINED_LIMIT + ".");
+        }
+        String newPolicy = options.has("evictionPolicy") ? options.optString("evictionPolicy", "") : evictionPolicy;
+        if (!DROP_OLDEST.equals(newPolicy) && !DROP_NEWEST.equals(newPolicy)) {
+            throw new IllegalArgumentException("evictionPolicy must be '" + DROP_OLDEST + "' or '" + DROP_NEWEST + "'.");
+        }
+        long newWindow = options.has("batchWindowMs") ? options.optLong("batchWindowMs", -1) : batchWindowMs;
+        if (newWindow < 0 || newWindow > MAX_BATCH_WINDOW_MS) {
+            throw new IllegalArgumentException("batchWindowMs must be between 0 and " + MAX_BATCH_WINDOW_MS + ".");
+        }
+        HashMap<String, Integer> newLimits = new HashMap<>(perTypeLimits);
+        JSObject limits = options.getJSObject("perTypeLimits");
+        if (limits != null) {
+            newLimits.clear();
+            Iterator<String> keys = limits.keys();
+            while (keys.hasNext()) {
+                String name = keys.next();
+                int limit = limits.optInt(name, -1);
+                if (limit < 0) {
+                    throw new IllegalArgumentException("perTypeLimits." + name + " must be a non-negative number.");
+                }
+                newLimits.put(name, limit);
+            }
+        }
+
+        maxRetained = newMaxRetained;
+        evictionPolicy = newPolicy;
+        batchWindowMs = newWindow;
+        perTypeLimits.clear();
+        perTypeLimits.putAll(newLimits);
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : perTypeLimits.entrySet()) {
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+            encoded.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        prefs.edit()
+                .putInt("maxRetained", maxRetained)
+                .putString("evictionPolicy", evictionPolicy)
+                .putLong("batchWindowMs", batchWindowMs)
+                .putString("perTypeLimits", encoded.toString())
+                .apply();
+        // Tightened limits apply to what is already buffered
+        while (retained.size() > maxRetained) {
+            evict(retained.getFirst());
+        }
+        for (Map.Entry<String, Integer> entry : perTypeLimits.entrySet()) {
+            while (count(entry.getKey()) > entry.getValue()) {
+                evict(oldestOf(entry.getKey()));
+            }
+        }
+        Log.d(TAG, "Event delivery configured: " + toJSObject());
+    }
+
+    /**
+     * @return the effective settings plus how many events are buffered and how many were evicted.
+     */
+    public synchronized JSObject toJSObject() {
+        JSObject limits = new JSObject();
+        for (Map.Entry<String, Integer> entry : perTypeLimits.entrySet()) {
+            limits.put(entry.getKey(), entry.getValue());
+        }
+        JSObject json = new JSObject();
+        json.put("maxRetained", maxRetained);
+        json.put("evictionPolicy", evictionPolicy);
+        json.put("perTypeLimits", limits);
+        json.put("batchWindowMs", batchWindowMs);
+        json.put("retained", retained.size());
+        json.put("evicted", evicted);
+        return json;
+    }
+
+    /**
+     * Sends an event now, adds it to the pending batch, or buffers it until a listener is added.
+     */
+    public void dispatch(String eventName, JSObject data) {
+        Pending event = new Pending(eventName, data);
+        synchronized (this) {
+            if (batchWindowMs > 0 && plugin.hasEventListeners(BATCH_EVENT)) {
+                batch.add(event);
+                if (batch.size() >= MAX_BATCH_SIZE) {
+                    handler.removeCallbacks(flushBatch);
+                    handler.post(flushBatch);
+                } else if (batch.size() == 1) {
+                    handler.postDelayed(flushBatch, batchWindowMs);
+                }
+                return;
+            }
+            if (!plugin.hasEventListeners(eventName)) {
+                retain(event);
+                return;
+            }
+        }
+        plugin.sendEvent(eventName, data);
+    }
+
+    private void flushBatch() {
+        List<Pending> events;
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(batch);
+            batch.clear();
+        }
+        sendBatch(events);
+    }
+
+    private void sendBatch(List<Pending> events) {
+        JSArray list = new JSArray();
+        for (Pending event : events) {
+            JSObject item = new JSObject();
+            item.put("event", event.name);
+            item.put("data", event.data);
+            list.put(item);
+        }
+        JSObject payload = new JSObject();
+        payload.put("events", list);
+        Log.d(TAG, "Sending " + events.size() + " events as one " + BATCH_EVENT + " payload.");
+        plugin.sendEvent(BATCH_EVENT, payload);
+    }
+
+    /**
+     * Hands buffered events to a listener that was just added for {@code eventName}; a listener for
+     * {@code alarmEvents} receives every buffered event in one batch.
+     */
+    public void onListenerAdded(String eventName) {
+        List<Pending> matched = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Pending> it = retained.iterator();
+            while (it.hasNext()) {
+                Pending event = it.next();
+                if (BATCH_EVENT.equals(eventName) || event.name.equals(eventName)) {
+                    matched.add(event);
+                    it.remove();
+                    retainedCounts.put(event.name, count(event.name) - 1);
+                }
+            }
+        }
+        if (matched.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "Delivering " + matched.size() + " buffered events to the new " + eventName + " listener.");
+        if (BATCH_EVENT.equals(eventName)) {
+            sendBatch(matched);
+        } else {
+            for (Pending event : matched) {
+                plugin.sendEvent(event.name, event.data);
+            }
+        }
+    }
+
+    private void retain(Pending event) {
+        Integer typeLimit = perTypeLimits.get(event.name);
+        boolean typeFull = typeLimit != null && count(event.name) >= typeLimit;
+        boolean full = retained.size() >= maxRetained;
+        if (typeFull || full) {
+            if (DROP_NEWEST.equals(evictionPolicy) || (typeFull ? typeLimit == 0 : maxRetained == 0)) {
+                evicted++;
+                Log.w(TAG, "Event buffer full, not keeping " + event.name + " (still in the outbox).");
+                return;
+            }
+            evict(typeFull ? oldestOf(event.name) : retained.getFirst());
+        }
+        retained.addLast(event);
+        retainedCounts.put(event.name, count(event.name) + 1);
+    }
+
+    private void evict(Pending event) {
+        retained.remove(event);
+        retainedCounts.put(event.name, count(event.name) - 1);
+        evicted++;
+        Log.w(TAG, "Event buffer full, evicted a buffered " + event.name + " (still in the outbox).");
+    }
+
+    private Pending oldestOf(String eventName) {
+        for (Pending event : retained) {
+            if (event.name.equals(eventName)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private int count(String eventName) {
+        Integer count = retainedCounts.get(eventName);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Sends any pending batch now and drops buffered events; called when the plugin is destroyed.
+     */
+    public void shutdown() {
+        handler.removeCallbacks(flushBatch);
+        flushBatch();
+        synchronized (this) {
+            retained.clear();
+            retainedCounts.clear();
+        }
+    }
+}
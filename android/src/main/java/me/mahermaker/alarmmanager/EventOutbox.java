@@ -0,0 +1,438 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent, bounded outbox for the events sent to JS (alarmFired, alarmDismissed, alarmSnoozed).
+ * Every event is written here first with a sequence number, then posted to the EventBus, which
+ * hands it to the plugin if one is loaded. Events that could not be delivered (process cold-started
+ * by the alarm, WebView gone) are replayed on the next {@code ManagerPlugin.load()}. Events stay in the outbox until the
+ * app acknowledges them with {@link #ack(long)}; once the outbox is full the oldest are dropped.
+ * Changes are persisted like AlarmStore, as an append-only log folded into a snapshot past
+ * {@link #COMPACT_THRESHOLD} operations. The log is written on a background thread, so publishing
+ * on the fire path or marking events delivered on the main thread never waits for the disk;
+ * changes made while a write is in flight go out together in the next one.
+ */
+public class EventOutbox {
+    private static final String TAG = "EventOutbox";
+    private static final String DIR_NAME = "alarm_events";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "log.bin";
+    private static final int SNAPSHOT_MAGIC = 0x45564F31; // "EVO1"
+    private static final byte OP_PUBLISH = 1;
+    private static final byte OP_DELIVERED = 2;
+    private static final byte OP_ACK = 3;
+    private static final int COMPACT_THRESHOLD = 1024; // Log operations before folding into a snapshot
+    static final int MAX_EVENTS = 500;
+
+    private static EventOutbox instance;
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final Executor writer; // Single thread; every file operation runs on it, in order
+    private final EventBus bus = EventBus.getInstance();
+    private final ArrayDeque<Event> events = new ArrayDeque<>(); // Unacknowledged, oldest first
+    private long nextSeq = 1;
+    private long ackedSeq; // Highest sequence number the app has acknowledged
+    private long dropped; // Events evicted unacknowledged because the outbox was full
+    private long lastPostedSeq; // Every event up to here has been posted to the bus
+    private boolean backlogged; // The bus ring was full; later events wait here until it drains
+
+    // Log entries not handed to the writer yet, and whether a write is already queued
+    private ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private boolean writeScheduled;
+    private int logOps; // Operations in the log file, including those still pending
+
+    private DataOutputStream log; // Touched only on the writer thread
+
+    static final class Event {
+        final long seq;
+        final long timestamp;
+        final String name;
+        final String dataJson;
+        volatile boolean delivered; // Handed to the plugin at least once
+
+        Event(long seq, long timestamp, String name, String dataJson) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.name = name;
+            this.dataJson = dataJson;
+        }
+
+        // The event's data as sent to listeners, with its sequence number for acknowledging
+        JSObject toEventData() {
+            JSObject data;
+            try {
+                data = new JSObject(dataJson);
+            } catch (JSONException e) {
+                data = new JSObject();
+            }
+            data.put("seq", seq);
+            return data;
+        }
+
+        JSObject toJSObject() {
+            JSObject json = new JSObject();
+            json.put("seq", seq);
+            json.put("event", name);
+            json.put("timestamp", timestamp);
+            json.put("data", toEventData());
+            return json;
+        }
+    }
+
+    public static synchronized EventOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new EventOutbox(new File(DeviceStorage.get(context).getFilesDir(), DIR_NAME),
+                    Executors.newSingleThreadExecutor());
+        }
+        return instance;
+    }
+
+    // Opens the outbox kept in dir; writer runs the file writes
+    EventOutbox(File dir, Executor writer) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create outbox directory: " + dir);
+        }
+        this.snapshotFile = new File(dir, SNAPSHOT_FILE);
+        this.logFile = new File(dir, LOG_FILE);
+        this.writer = writer;
+        load();
+    }
+
+    /**
+     * Records an event and posts it to the EventBus.
+     */
+    public void publish(String eventName, JSObject data) {
+        publish(eventName, data.toString());
+    }
+
+    synchronized void publish(String eventName, String dataJson) {
+        Event event = new Event(nextSeq++, System.currentTimeMillis(), eventName, dataJson);
+        add(event);
+        // Posting under this lock keeps the outbox the bus's single producer, and in order
+        if (!backlogged && bus.post(event)) {
+            lastPostedSeq = event.seq;
+        } else {
+            backlogged = true;
+            Log.d(TAG, "Event bus full, event " + event.seq + " (" + eventName + ") waits in the outbox.");
+        }
+        try {
+            pending.writeByte(OP_PUBLISH);
+            pending.writeLong(event.seq);
+            pending.writeLong(event.timestamp);
+            AlarmRecord.writeString(pending, event.name);
+            AlarmRecord.writeString(pending, event.dataJson);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory stream
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Records that the plugin has received {@code delivered}, and posts events held back while the
+     * bus was full now that it has drained. Called by the bus subscriber on the main thread.
+     */
+    public synchronized void markDelivered(List<Event> delivered) {
+        try {
+            pending.writeByte(OP_DELIVERED);
+            pending.writeInt(delivered.size());
+            for (Event event : delivered) {
+                event.delivered = true;
+                pending.writeLong(event.seq);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory stream
+        }
+        if (backlogged) {
+            postFrom(lastPostedSeq);
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Posts every event that was never delivered to the bus again, oldest first, e.g. events raised
+     * while no plugin was loaded. Called from {@code ManagerPlugin.load()} once it has subscribed.
+     */
+    public synchronized void replayUndelivered() {
+        int count = postFrom(0);
+        if (count > 0) {
+            Log.i(TAG, "Replaying " + count + " undelivered events.");
+        }
+    }
+
+    // Posts undelivered events after afterSeq in order until the ring is full; call with the lock held
+    private int postFrom(long afterSeq) {
+        int posted = 0;
+        for (Event event : events) {
+            if (event.seq <= afterSeq || event.delivered) {
+                continue;
+            }
+            if (!bus.post(event)) {
+                backlogged = true;
+                return posted; // Resumed from lastPostedSeq on the next markDelivered
+            }
+            posted++;
+            lastPostedSeq = event.seq;
+        }
+        backlogged = false;
+        lastPostedSeq = nextSeq - 1;
+        return posted;
+    }
+
+    /**
+     * @return up to {@code limit} unacknowledged events with a sequence number above {@code afterSeq},
+     * plus the acknowledged cursor and the number of events dropped because the outbox was full.
+     */
+    public synchronized JSObject getPending(long afterSeq, int limit) {
+        JSArray list = new JSArray();
+        for (Event event : pendingEvents(afterSeq, limit)) {
+            list.put(event.toJSObject());
+        }
+        JSObject result = new JSObject();
+        result.put("events", list);
+        result.put("ackedSeq", ackedSeq);
+        result.put("dropped", dropped);
+        return result;
+    }
+
+    synchronized List<Event> pendingEvents(long afterSeq, int limit) {
+        List<Event> list = new ArrayList<>(Math.min(limit, events.size()));
+        for (Event event : events) {
+            if (list.size() >= limit) {
+                break;
+            }
+            if (event.seq > afterSeq) {
+                list.add(event);
+            }
+        }
+        return list;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Acknowledges every event up to and including {@code seq}; they are removed from the outbox.
+     * @return the number of events removed.
+     */
+    public synchronized int ack(long seq) {
+        long previous = ackedSeq;
+        int removed = applyAck(seq);
+        if (ackedSeq != previous) {
+            try {
+                pending.writeByte(OP_ACK);
+                pending.writeLong(ackedSeq);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // In-memory stream
+            }
+            scheduleWrite();
+        }
+        return removed;
+    }
+
+    // Appends an event, evicting the oldest past MAX_EVENTS; shared by publish and log replay
+    private void add(Event event) {
+        events.addLast(event);
+        while (events.size() > MAX_EVENTS) {
+            events.removeFirst();
+            dropped++;
+        }
+    }
+
+    // Shared by ack and log replay
+    private int applyAck(long seq) {
+        if (seq <= ackedSeq) {
+            return 0;
+        }
+        ackedSeq = Math.min(seq, nextSeq - 1);
+        int removed = 0;
+        while (!events.isEmpty() && events.peekFirst().seq <= ackedSeq) {
+            events.removeFirst();
+            removed++;
+        }
+        return removed;
+    }
+
+    // Counts the entry just added to pending and queues a write if none is waiting; lock held
+    private void scheduleWrite() {
+        logOps++;
+        if (!writeScheduled) {
+            writeScheduled = true;
+            writer.execute(this::write);
+        }
+    }
+
+    // Writer thread: appends everything pending in one write, or folds it all into a snapshot
+    private void write() {
+        byte[] bytes;
+        byte[] snapshot = null;
+        synchronized (this) {
+            writeScheduled = false;
+            bytes = pendingBytes.toByteArray();
+            pendingBytes = new ByteArrayOutputStream();
+            pending = new DataOutputStream(pendingBytes);
+            if (logOps >= COMPACT_THRESHOLD && logOps > events.size()) {
+                snapshot = encodeSnapshot(); // Covers bytes too, which are then not appended
+                logOps = 0;
+            }
+        }
+        if (snapshot != null) {
+            writeSnapshot(snapshot);
+            return;
+        }
+        try {
+            if (log == null) {
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+            }
+            log.write(bytes);
+            log.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to event outbox log.", e);
+        }
+    }
+
+    // Current state in snapshot form; call with the lock held
+    private byte[] encodeSnapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(nextSeq);
+            out.writeLong(ackedSeq);
+            out.writeLong(dropped);
+            out.writeInt(events.size());
+            for (Event event : events) {
+                out.writeLong(event.seq);
+                out.writeLong(event.timestamp);
+                AlarmRecord.writeString(out, event.name);
+                AlarmRecord.writeString(out, event.dataJson);
+                out.writeBoolean(event.delivered);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the snapshot with {@code snapshot} and truncates the log. Writer thread only.
+     */
+    private void writeSnapshot(byte[] snapshot) {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing event outbox log.", e);
+            }
+            log = null;
+        }
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            fos.write(snapshot);
+            fos.getFD().sync(); // On disk before the rename makes it the only copy
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write event outbox snapshot.", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            Log.e(TAG, "Failed to replace event outbox snapshot.");
+            tmp.delete();
+            return;
+        }
+        logFile.delete();
+    }
+
+    private synchronized void load() {
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Bad snapshot header");
+                }
+                nextSeq = in.readLong();
+                ackedSeq = in.readLong();
+                dropped = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Event event = new Event(in.readLong(), in.readLong(), AlarmRecord.readString(in), AlarmRecord.readString(in));
+                    event.delivered = in.readBoolean();
+                    events.addLast(event);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Event outbox snapshot is unreadable, continuing with " + events.size() + " events.", e);
+            }
+        }
+
+        boolean tornTail = false;
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                while (true) {
+                    int op = in.read();
+                    if (op == -1) {
+                        break;
+                    }
+                    if (op == OP_PUBLISH) {
+                        Event event = new Event(in.readLong(), in.readLong(), AlarmRecord.readString(in), AlarmRecord.readString(in));
+                        if (event.seq >= nextSeq) { // Older entries are already in the snapshot
+                            nextSeq = event.seq + 1;
+                            add(event);
+                        }
+                    } else if (op == OP_DELIVERED) {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            long seq = in.readLong();
+                            for (Event event : events) {
+                                if (event.seq == seq) {
+                                    event.delivered = true;
+                                    break;
+                                }
+                            }
+                        }
+                    } else if (op == OP_ACK) {
+                        applyAck(in.readLong());
+                    } else {
+                        throw new IOException("Unknown log op: " + op);
+                    }
+                    logOps++;
+                }
+            } catch (EOFException e) {
+                tornTail = true;
+                Log.w(TAG, "Event outbox log ends with a partial entry, discarding it.");
+            } catch (IOException e) {
+                tornTail = true;
+                Log.e(TAG, "Event outbox log unreadable past entry " + logOps + ", discarding the rest.", e);
+            }
+        }
+
+        if (tornTail) {
+            writeSnapshot(encodeSnapshot()); // Rewrite a clean snapshot so new appends don't follow garbage
+            logOps = 0;
+        }
+        Log.d(TAG, "Loaded " + events.size() + " unacknowledged events.");
+    }
+}
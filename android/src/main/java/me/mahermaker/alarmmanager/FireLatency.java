@@ -0,0 +1,172 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the fire path from the OS delivering the alarm to sound actually playing.
+ * Each hop marks its stage with a monotonic timestamp; once sound starts the delay of every stage
+ * (relative to AlarmReceiver) is added to a per-stage histogram that survives process restarts.
+ */
+public class FireLatency {
+    private static final String TAG = "FireLatency";
+    private static final String PREFS_NAME = "me.mahermaker.alarmmanager.FireLatency";
+
+    public static final int RECEIVED = 0; // AlarmReceiver.onReceive
+    public static final int SERVICE_STARTED = 1; // AlarmForegroundService.onStartCommand
+    public static final int FOREGROUND = 2; // startForeground returned
+    public static final int ACTIVITY_CREATED = 3; // AlarmRingingActivity.onCreate
+    public static final int FIRST_FRAME = 4; // Ringing screen drawn
+    public static final int SOUND_PREPARED = 5; // Cached sound loaded into an AudioTrack, or MediaPlayer onPrepared
+    public static final int SOUND_STARTED = 6; // AudioTrack play or MediaPlayer start returned
+    static final String[] STAGE_NAMES = {
+            "received", "serviceStarted", "foreground", "activityCreated", "firstFrame", "soundPrepared", "soundStarted"
+    };
+
+    // Which step of AlarmForegroundService's fallback chain produced the sound
+    public static final int SOURCE_CACHED = 0; // Pre-decoded PCM from SoundCache
+    public static final int SOURCE_CONFIGURED = 1; // MediaPlayer on the alarm's soundUri
+    public static final int SOURCE_SYSTEM_DEFAULT = 2; // MediaPlayer on the system default alarm
+    public static final int SOURCE_BUILTIN_TONE = 3; // Tone generated in memory
+    public static final int SOURCE_NONE = 4; // Every tier failed
+    static final String[] SOURCE_NAMES = { "cached", "configured", "systemDefault", "builtinTone", "none" };
+    private static final int SOURCE_SLOT = STAGE_NAMES.length; // Trace slot holding source + 1, 0 if unknown
+
+    private static FireLatency instance;
+
+    private final SharedPreferences prefs;
+    private static final int MAX_CLOSED_TRACES = 16;
+
+    private final HashMap<String, long[]> traces = new HashMap<>(); // alarmId -> elapsedRealtime per stage, 0 if not reached
+    // Traces already reported on alarmFired; stages reached afterwards (e.g. the first frame when sound won the race) still count
+    private final LinkedHashMap<String, long[]> closed = new LinkedHashMap<String, long[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > MAX_CLOSED_TRACES;
+        }
+    };
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_NAMES.length];
+    private final LatencyHistogram[] sourceHistograms = new LatencyHistogram[SOURCE_NAMES.length]; // Time-to-sound per source
+
+    public static synchronized FireLatency getInstance(Context context) {
+        if (instance == null) {
+            instance = new FireLatency(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FireLatency(Context context) {
+        this.prefs = DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (int stage = SERVICE_STARTED; stage < STAGE_NAMES.length; stage++) {
+            histograms[stage] = LatencyHistogram.decode(prefs.getString(STAGE_NAMES[stage], null));
+        }
+        for (int source = 0; source < SOURCE_NAMES.length; source++) {
+            sourceHistograms[source] = LatencyHistogram.decode(prefs.getString("source." + SOURCE_NAMES[source], null));
+        }
+    }
+
+    /**
+     * Records that {@code alarmId} reached {@code stage} now. Marking RECEIVED starts a new trace;
+     * later stages are ignored if no trace exists, and only the first mark of a stage counts.
+     * Stages reached after {@link #finish(String)} go straight into the histograms.
+     */
+    public synchronized void mark(String alarmId, int stage) {
+        if (alarmId == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (stage == RECEIVED) {
+            long[] trace = new long[STAGE_NAMES.length + 1];
+            trace[RECEIVED] = now;
+            traces.put(alarmId, trace);
+            closed.remove(alarmId);
+            return;
+        }
+        long[] trace = traces.get(alarmId);
+        if (trace != null) {
+            if (trace[stage] == 0) {
+                trace[stage] = now;
+            }
+            return;
+        }
+        trace = closed.get(alarmId);
+        if (trace != null && trace[stage] == 0) {
+            trace[stage] = now;
+            record(stage, now - trace[RECEIVED]);
+        }
+    }
+
+    /**
+     * Records which fallback tier produced the sound (or that none did) for the open trace.
+     */
+    public synchronized void setSoundSource(String alarmId, int source) {
+        long[] trace = alarmId != null ? traces.get(alarmId) : null;
+        if (trace != null) {
+            trace[SOURCE_SLOT] = source + 1;
+        }
+    }
+
+    private void record(int stage, long delay) {
+        histograms[stage].add(delay);
+        prefs.edit().putString(STAGE_NAMES[stage], histograms[stage].encode()).apply();
+    }
+
+    /**
+     * Closes the trace for {@code alarmId}, adds every reached stage to the histograms and persists them.
+     * @return the per-stage delays in ms since the receiver ran, or null if no trace was open.
+     */
+    public synchronized JSObject finish(String alarmId) {
+        long[] trace = alarmId != null ? traces.remove(alarmId) : null;
+        if (trace == null) {
+            return null;
+        }
+        closed.put(alarmId, trace);
+        JSObject latency = new JSObject();
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int stage = SERVICE_STARTED; stage < STAGE_NAMES.length; stage++) {
+            if (trace[stage] == 0) {
+                continue; // Stage skipped, e.g. sound failed and fell back
+            }
+            long delay = trace[stage] - trace[RECEIVED];
+            latency.put(STAGE_NAMES[stage] + "Ms", delay);
+            histograms[stage].add(delay);
+            editor.putString(STAGE_NAMES[stage], histograms[stage].encode());
+        }
+        if (trace[SOURCE_SLOT] > 0) {
+            int source = (int) trace[SOURCE_SLOT] - 1;
+            latency.put("soundSource", SOURCE_NAMES[source]);
+            // Time to sound for sources that played, time until giving up for SOURCE_NONE
+            long end = trace[SOUND_STARTED] != 0 ? trace[SOUND_STARTED] : SystemClock.elapsedRealtime();
+            sourceHistograms[source].add(end - trace[RECEIVED]);
+            editor.putString("source." + SOURCE_NAMES[source], sourceHistograms[source].encode());
+        }
+        editor.apply();
+        Log.i(TAG, "Fire latency for alarm " + alarmId + ": " + latency);
+        return latency;
+    }
+
+    /**
+     * @return count, mean, max and p50/p90/p99 (upper bucket bounds) in ms for every stage, plus
+     * time-to-sound per sound source under {@code soundSources}.
+     */
+    public synchronized JSObject getStats() {
+        JSObject stats = new JSObject();
+        for (int stage = SERVICE_STARTED; stage < STAGE_NAMES.length; stage++) {
+            stats.put(STAGE_NAMES[stage], histograms[stage].toJSObject());
+        }
+        JSObject sources = new JSObject();
+        for (int source = 0; source < SOURCE_NAMES.length; source++) {
+            sources.put(SOURCE_NAMES[source], sourceHistograms[source].toJSObject());
+        }
+        stats.put("soundSources", sources);
+        return stats;
+    }
+}
@@ -0,0 +1,88 @@
+package me.mahermaker.alarmmanager;
+
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Fixed-size log2-bucketed histogram of millisecond delays: bucket 0 holds delays under 1 ms,
+ * bucket i holds [2^(i-1), 2^i) ms and the last bucket everything above. Adding a sample is a
+ * couple of array writes; the whole histogram encodes to one short string for persistence.
+ * Not thread-safe; owners guard every access.
+ */
+public class LatencyHistogram {
+    private static final String TAG = "LatencyHistogram";
+    static final int BUCKETS = 20; // Last bucket starts at ~4.4 minutes
+
+    final long[] counts = new long[BUCKETS];
+    long count;
+    long sum;
+    long max;
+
+    public void add(long ms) {
+        ms = Math.max(0, ms);
+        int bucket = ms == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+        counts[bucket]++;
+        count++;
+        sum += ms;
+        max = Math.max(max, ms);
+    }
+
+    public long percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(max, i == 0 ? 1 : 1L << i); // Upper bound of the bucket, capped by the real max
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return count, mean, max and p50/p90/p99 (upper bucket bounds) in ms.
+     */
+    public JSObject toJSObject() {
+        JSObject json = new JSObject();
+        json.put("count", count);
+        json.put("meanMs", count > 0 ? sum / count : 0);
+        json.put("p50Ms", percentile(0.50));
+        json.put("p90Ms", percentile(0.90));
+        json.put("p99Ms", percentile(0.99));
+        json.put("maxMs", max);
+        return json;
+    }
+
+    // "sum,max,c0,c1,...": small enough to rewrite on every sample
+    public String encode() {
+        StringBuilder sb = new StringBuilder().append(sum).append(',').append(max);
+        for (long c : counts) {
+            sb.append(',').append(c);
+        }
+        return sb.toString();
+    }
+
+    public static LatencyHistogram decode(String encoded) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        if (encoded == null) {
+            return histogram;
+        }
+        try {
+            String[] parts = encoded.split(",");
+            histogram.sum = Long.parseLong(parts[0]);
+            histogram.max = Long.parseLong(parts[1]);
+            for (int i = 0; i < BUCKETS && i + 2 < parts.length; i++) {
+                histogram.counts[i] = Long.parseLong(parts[i + 2]);
+                histogram.count += histogram.counts[i];
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable histogram: " + encoded);
+            return new LatencyHistogram();
+        }
+        return histogram;
+    }
+}
@@ -12,27 +12,43 @@ import android.util.Log;
 import androidx.core.app.ActivityCompat; // Added import
 import androidx.core.content.ContextCompat; // Added import
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 @CapacitorPlugin(name = "AlarmManager")
 public class ManagerPlugin extends Plugin {
 
     private static final String LOG_TAG = "ManagerPlugin";
-    public static ManagerPlugin instance;
     private AlarmManagerImplementation implementation;
+    private SchedulingExecutor scheduler; // Every call that reads or writes the schedule goes through it, in call order
+    private EventDispatcher eventDispatcher;
+    // Held here because the bus only keeps a weak reference
+    private final EventBus.Subscriber eventSubscriber = this::onBusEvents;
 
     private static final int POST_NOTIFICATIONS_REQUEST_CODE = 9001;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String QUEUE_FULL = "QUEUE_FULL";
     private PluginCall savedPostNotificationCall;
 
     @Override
     public void load() {
         super.load();
-        instance = this; // Set static instance
+        eventDispatcher = new EventDispatcher(this, getContext());
         implementation = new AlarmManagerImplementation(getContext()); // Pass context
+        scheduler = SchedulingExecutor.getInstance(getContext());
+        EventBus.getInstance().subscribe(eventSubscriber);
+        EventOutbox.getInstance(getContext()).replayUndelivered(); // Events raised while the bridge was down
     }
 
     @PluginMethod
@@ -43,23 +59,33 @@ public class ManagerPlugin extends Plugin {
             return;
         }
 
-        String alarmId = alarmConfig.getString("alarmId");
-        boolean exact = alarmConfig.optBoolean("exact", true);
-        boolean success = implementation.setAlarm(alarmConfig);
-
-        if (success) {
-            JSObject ret = new JSObject();
-            ret.put("alarmId", alarmId);
-            call.resolve(ret);
-        } else {
-            String errorMessage = "Failed to schedule alarm. Please check device logs (Logcat) for more details.";
-            if (exact && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                android.app.AlarmManager am = (android.app.AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
-                if (am != null && !am.canScheduleExactAlarms()) {
-                    errorMessage = "Failed to schedule exact alarm: The SCHEDULE_EXACT_ALARM permission is required and not granted. Please request it first.";
+        AlarmRecord record;
+        try {
+            record = AlarmRecord.fromConfig(alarmConfig);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        String alarmId = record.alarmId;
+        boolean exact = record.exact;
+        boolean accepted = scheduler.submitSet(Collections.singletonList(record), results -> {
+            if (results[0]) {
+                JSObject ret = new JSObject();
+                ret.put("alarmId", alarmId);
+                call.resolve(ret);
+            } else {
+                String errorMessage = "Failed to schedule alarm. Please check device logs (Logcat) for more details.";
+                if (exact && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    android.app.AlarmManager am = (android.app.AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
+                    if (am != null && !am.canScheduleExactAlarms()) {
+                        errorMessage = "Failed to schedule exact alarm: The SCHEDULE_EXACT_ALARM permission is required and not granted. Please request it first.";
+                    }
                 }
+                call.reject(errorMessage);
             }
-            call.reject(errorMessage);
+        });
+        if (!accepted) {
+            rejectQueueFull(call);
         }
     }
 
@@ -87,8 +113,175 @@ public class ManagerPlugin extends Plugin {
             return;
         }
 
-        implementation.cancelAlarm(alarmId);
-        call.resolve();
+        if (!scheduler.submitCancel(Collections.singletonList(alarmId), results -> call.resolve())) {
+            rejectQueueFull(call);
+        }
+    }
+
+    @PluginMethod
+    public void setMany(PluginCall call) {
+        JSArray alarms = call.getArray("alarms");
+        if (alarms == null) {
+            call.reject("Missing alarms array in request data");
+            return;
+        }
+
+        // Validate everything in one pass; invalid entries get a per-item error instead of failing the batch
+        int count = alarms.length();
+        JSObject[] itemResults = new JSObject[count];
+        List<AlarmRecord> records = new ArrayList<>(count);
+        List<Integer> positions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JSONObject alarmConfig = alarms.optJSONObject(i);
+            if (alarmConfig == null) {
+                itemResults[i] = batchResult(null, false, "Invalid alarm configuration: not an object.");
+                continue;
+            }
+            AlarmRecord record;
+            try {
+                record = AlarmRecord.fromConfig(alarmConfig);
+            } catch (IllegalArgumentException e) {
+                itemResults[i] = batchResult(alarmConfig.optString("alarmId", null), false, e.getMessage());
+                continue;
+            }
+            records.add(record);
+            positions.add(i);
+        }
+
+        boolean accepted = scheduler.submitSet(records, scheduled -> {
+            boolean canScheduleExact = implementation.canScheduleExactAlarms();
+            for (int j = 0; j < records.size(); j++) {
+                AlarmRecord record = records.get(j);
+                String error = null;
+                if (!scheduled[j]) {
+                    error = record.exact && !canScheduleExact
+                            ? "Failed to schedule exact alarm: The SCHEDULE_EXACT_ALARM permission is required and not granted. Please request it first."
+                            : "Failed to schedule alarm. Please check device logs (Logcat) for more details.";
+                }
+                itemResults[positions.get(j)] = batchResult(record.alarmId, scheduled[j], error);
+            }
+            call.resolve(batchResponse(itemResults));
+        });
+        if (!accepted) {
+            rejectQueueFull(call);
+        }
+    }
+
+    @PluginMethod
+    public void cancelMany(PluginCall call) {
+        JSArray alarmIds = call.getArray("alarmIds");
+        if (alarmIds == null) {
+            call.reject("Missing alarmIds array in request data");
+            return;
+        }
+
+        int count = alarmIds.length();
+        JSObject[] itemResults = new JSObject[count];
+        List<String> ids = new ArrayList<>(count);
+        List<Integer> positions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String alarmId = alarmIds.isNull(i) ? null : alarmIds.optString(i, null);
+            if (alarmId == null || alarmId.isEmpty()) {
+                itemResults[i] = batchResult(alarmId, false, "alarmId value is null or empty");
+                continue;
+            }
+            ids.add(alarmId);
+            positions.add(i);
+        }
+
+        boolean accepted = scheduler.submitCancel(ids, cancelled -> {
+            for (int j = 0; j < ids.size(); j++) {
+                itemResults[positions.get(j)] = batchResult(ids.get(j), cancelled[j],
+                        cancelled[j] ? null : "Alarm not found");
+            }
+            call.resolve(batchResponse(itemResults));
+        });
+        if (!accepted) {
+            rejectQueueFull(call);
+        }
+    }
+
+    @PluginMethod
+    public void sync(PluginCall call) {
+        JSArray alarms = call.getArray("alarms");
+        if (alarms == null) {
+            call.reject("Missing alarms array in request data");
+            return;
+        }
+
+        List<AlarmRecord> desired = new ArrayList<>(alarms.length());
+        for (int i = 0; i < alarms.length(); i++) {
+            JSONObject alarmConfig = alarms.optJSONObject(i);
+            // Rejecting outright is safer than treating the entry as absent and cancelling it
+            if (alarmConfig == null) {
+                call.reject("Invalid alarm configuration at index " + i + ": not an object.");
+                return;
+            }
+            try {
+                desired.add(AlarmRecord.fromConfig(alarmConfig));
+            } catch (IllegalArgumentException e) {
+                call.reject("Invalid alarm configuration at index " + i + ": " + e.getMessage());
+                return;
+            }
+        }
+
+        runScheduled(call, () -> {
+            AlarmManagerImplementation.SyncResult result = implementation.sync(desired);
+            JSObject ret = new JSObject();
+            ret.put("added", new JSArray(result.added));
+            ret.put("updated", new JSArray(result.updated));
+            ret.put("removed", new JSArray(result.removed));
+            ret.put("failed", new JSArray(result.failed));
+            ret.put("expired", new JSArray(result.expired));
+            ret.put("unchanged", result.unchanged);
+            call.resolve(ret);
+        });
+    }
+
+    // Runs task after every scheduling call made before it, rejecting the call if the queue is full or the task throws
+    private void runScheduled(PluginCall call, Runnable task) {
+        boolean accepted = scheduler.submitTask(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Error in " + call.getMethodName(), e);
+                call.reject("Error in " + call.getMethodName() + ": " + e.getMessage());
+            }
+        });
+        if (!accepted) {
+            rejectQueueFull(call);
+        }
+    }
+
+    private static void rejectQueueFull(PluginCall call) {
+        call.reject("Too many scheduling calls pending (limit " + SchedulingExecutor.MAX_PENDING_COMMANDS
+                + "). Retry later or use the batch methods.", QUEUE_FULL);
+    }
+
+    private static JSObject batchResult(String alarmId, boolean success, String error) {
+        JSObject item = new JSObject();
+        item.put("alarmId", alarmId);
+        item.put("success", success);
+        if (error != null) {
+            item.put("error", error);
+        }
+        return item;
+    }
+
+    private static JSObject batchResponse(JSObject[] itemResults) {
+        JSArray results = new JSArray();
+        int succeeded = 0;
+        for (JSObject item : itemResults) {
+            results.put(item);
+            if (item.optBoolean("success")) {
+                succeeded++;
+            }
+        }
+        JSObject ret = new JSObject();
+        ret.put("results", results);
+        ret.put("succeeded", succeeded);
+        ret.put("failed", itemResults.length - succeeded);
+        return ret;
     }
 
     @PluginMethod
@@ -115,10 +308,200 @@ public class ManagerPlugin extends Plugin {
             return;
         }
 
-        boolean scheduled = implementation.isScheduled(alarmId);
-        JSObject ret = new JSObject();
-        ret.put("isScheduled", scheduled);
-        call.resolve(ret);
+        runScheduled(call, () -> {
+            boolean scheduled = implementation.isScheduled(alarmId);
+            JSObject ret = new JSObject();
+            ret.put("isScheduled", scheduled);
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getAll(PluginCall call) {
+        runScheduled(call, () -> {
+            JSArray alarms = new JSArray();
+            for (AlarmRecord record : AlarmStore.getInstance(getContext()).getAll()) {
+                alarms.put(record.toJSObject());
+            }
+            JSObject ret = new JSObject();
+            ret.put("alarms", alarms);
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void get(PluginCall call) {
+        String alarmId = call.getString("alarmId");
+        if (alarmId == null || alarmId.isEmpty()) {
+            call.reject("Missing alarmId in request data");
+            return;
+        }
+        runScheduled(call, () -> {
+            AlarmRecord record = AlarmStore.getInstance(getContext()).get(alarmId);
+            JSObject ret = new JSObject();
+            if (record != null) {
+                ret.put("alarm", record.toJSObject());
+            }
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getBetween(PluginCall call) {
+        Long from = call.getLong("from");
+        Long to = call.getLong("to");
+        if (from == null || to == null) {
+            call.reject("Missing from or to in request data");
+            return;
+        }
+        int limit = Math.max(1, Math.min(call.getInt("limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+
+        // Cursor is "<at>:<alarmId>" of the last alarm on the previous page
+        Long afterAt = null;
+        String afterId = null;
+        String cursor = call.getString("cursor");
+        if (cursor != null && !cursor.isEmpty()) {
+            int separator = cursor.indexOf(':');
+            try {
+                afterAt = Long.parseLong(cursor.substring(0, separator));
+                afterId = cursor.substring(separator + 1);
+            } catch (RuntimeException e) {
+                call.reject("Invalid cursor: " + cursor);
+                return;
+            }
+        }
+
+        Long pageAfterAt = afterAt;
+        String pageAfterId = afterId;
+        runScheduled(call, () -> {
+            List<AlarmRecord> page = AlarmStore.getInstance(getContext()).getBetween(from, to, pageAfterAt, pageAfterId, limit);
+            JSArray alarms = new JSArray();
+            for (AlarmRecord record : page) {
+                alarms.put(record.toJSObject());
+            }
+            JSObject ret = new JSObject();
+            ret.put("alarms", alarms);
+            if (page.size() == limit) {
+                AlarmRecord last = page.get(page.size() - 1);
+                ret.put("nextCursor", last.at + ":" + last.alarmId);
+            }
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void cancelByTag(PluginCall call) {
+        String tag = call.getString("tag");
+        if (tag == null || tag.isEmpty()) {
+            call.reject("Missing tag in request data");
+            return;
+        }
+        runScheduled(call, () -> {
+            JSObject ret = new JSObject();
+            ret.put("cancelled", implementation.cancelByTag(tag));
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getByTag(PluginCall call) {
+        String tag = call.getString("tag");
+        if (tag == null || tag.isEmpty()) {
+            call.reject("Missing tag in request data");
+            return;
+        }
+        runScheduled(call, () -> {
+            JSArray alarms = new JSArray();
+            for (AlarmRecord record : AlarmStore.getInstance(getContext()).getByTag(tag)) {
+                alarms.put(record.toJSObject());
+            }
+            JSObject ret = new JSObject();
+            ret.put("alarms", alarms);
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void countByTag(PluginCall call) {
+        String tag = call.getString("tag");
+        if (tag == null || tag.isEmpty()) {
+            call.reject("Missing tag in request data");
+            return;
+        }
+        runScheduled(call, () -> {
+            JSObject ret = new JSObject();
+            ret.put("count", AlarmStore.getInstance(getContext()).countByTag(tag));
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getBootRescheduleStats(PluginCall call) {
+        call.resolve(BootReceiver.getLastRescheduleStats(getContext()));
+    }
+
+    @PluginMethod
+    public void getFireLatencyStats(PluginCall call) {
+        call.resolve(FireLatency.getInstance(getContext()).getStats());
+    }
+
+    @PluginMethod
+    public void getDriftStats(PluginCall call) {
+        call.resolve(DeliveryDrift.getInstance(getContext()).getStats());
+    }
+
+    @PluginMethod
+    public void getPendingEvents(PluginCall call) {
+        long afterSeq = call.getLong("afterSeq", 0L);
+        int limit = Math.max(1, Math.min(call.getInt("limit", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+        call.resolve(EventOutbox.getInstance(getContext()).getPending(afterSeq, limit));
+    }
+
+    @PluginMethod
+    public void ackEvents(PluginCall call) {
+        Long seq = call.getLong("seq");
+        if (seq == null) {
+            call.reject("seq is required.");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("removed", EventOutbox.getInstance(getContext()).ack(seq));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void configureEventDelivery(PluginCall call) {
+        JSObject options = call.getData();
+        try {
+            eventDispatcher.configure(options != null ? options : new JSObject());
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        call.resolve(eventDispatcher.toJSObject());
+    }
+
+    // Overridden so events buffered while nobody listened are handed to the new listener
+    @Override
+    @PluginMethod(returnType = PluginMethod.RETURN_NONE)
+    public void addListener(PluginCall call) {
+        super.addListener(call);
+        String eventName = call.getString("eventName");
+        if (eventName != null) {
+            eventDispatcher.onListenerAdded(eventName);
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        EventBus.getInstance().unsubscribe(eventSubscriber);
+        eventDispatcher.shutdown();
+        super.handleOnDestroy();
+    }
+
+    @PluginMethod
+    public void getWakeLockStats(PluginCall call) {
+        call.resolve(WakeLockManager.getInstance(getContext()).getStats());
     }
 
     @PluginMethod
@@ -355,13 +738,47 @@ public class ManagerPlugin extends Plugin {
         }
     }
 
-    public void notifyAlarmEvent(String eventName, String alarmId, String originalAlarmName) {
+    public static void notifyAlarmEvent(Context context, String eventName, String alarmId, String originalAlarmName) {
+        notifyAlarmEvent(context, eventName, alarmId, originalAlarmName, null, false);
+    }
+
+    /**
+     * Records an alarm event in the EventOutbox, which delivers it now if the bridge is up or
+     * replays it on the next load() otherwise.
+     * @param latency per-stage fire-path delays from {@link FireLatency#finish(String)}, or null.
+     * @param timedOut true when the alarm was snoozed or dismissed by its ring timeout rather than by the user.
+     */
+    public static void notifyAlarmEvent(Context context, String eventName, String alarmId, String originalAlarmName,
+                                        JSObject latency, boolean timedOut) {
         JSObject data = new JSObject();
         data.put("alarmId", alarmId);
         if (originalAlarmName != null) {
             data.put("name", originalAlarmName);
         }
+        if (latency != null) {
+            data.put("latency", latency);
+        }
+        if (timedOut) {
+            data.put("timedOut", true);
+        }
+        EventOutbox.getInstance(context).publish(eventName, data);
+    }
+
+    // Live events and replays from the outbox, drained from the EventBus on the main thread
+    private void onBusEvents(List<EventOutbox.Event> events) {
+        for (EventOutbox.Event event : events) {
+            eventDispatcher.dispatch(event.name, event.toEventData());
+        }
+        EventOutbox.getInstance(getContext()).markDelivered(events);
+    }
+
+    boolean hasEventListeners(String eventName) {
+        return hasListeners(eventName);
+    }
+
+    // Not retained by the bridge: EventDispatcher buffers undelivered events within its own limits
+    void sendEvent(String eventName, JSObject data) {
         Log.d(LOG_TAG, "Notifying listeners for event: " + eventName + " with data: " + data.toString());
-        notifyListeners(eventName, data, true);
+        notifyListeners(eventName, data, false);
     }
 }
@@ -0,0 +1,196 @@
+package me.mahermaker.alarmmanager;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handles alarms whose time passed without them ringing: while the device was off, after the
+ * clock or time zone changed, or when Doze held the broadcast back. The overdue range is read from
+ * the time-ordered store index, so only alarms that are actually late are touched. Each alarm's
+ * {@code missedPolicy} decides whether it rings now, is folded into one "missed N alarms"
+ * notification, or is dropped. Recurring alarms move on to their next occurrence either way, and
+ * the app gets a single {@code alarmsMissed} event per pass instead of one fire per alarm.
+ */
+public final class MissedAlarms {
+    private static final String TAG = "MissedAlarms";
+    public static final String EVENT_NAME = "alarmsMissed";
+    public static final String REASON_BOOT = "boot";
+    public static final String REASON_TIME_CHANGE = "timeChange";
+    public static final String REASON_LATE = "late";
+    static final long MISSED_AFTER_MS = 10 * 60 * 1000L; // Later than this (plus the alarm's tolerance) counts as missed
+    private static final int MISSED_NOTIFICATION_ID = AlarmForegroundService.SERVICE_NOTIFICATION_ID + 2;
+
+    private MissedAlarms() {}
+
+    /**
+     * @return true if the occurrence at {@code at} is past the point where it should just ring.
+     */
+    public static boolean isLate(AlarmRecord record, long at, long now) {
+        return now - at > MISSED_AFTER_MS + record.toleranceMs;
+    }
+
+    /**
+     * Applies each overdue alarm's missed policy and publishes one {@code alarmsMissed} event.
+     * After a time zone change, pending recurring alarms are also re-evaluated in the new zone.
+     * Must run on the SchedulingExecutor, like every other schedule write. Overdue records are moved
+     * on or removed in AlarmStore before any of them rings, which is what tells AlarmReceiver to
+     * ignore their OS broadcast if it still arrives, even in a later process.
+     * @param reason "boot", "timeChange" or "late", passed through to the event.
+     * @return how many overdue alarms were handled.
+     */
+    public static synchronized int catchUp(Context context, String reason, boolean zoneChanged) {
+        long now = System.currentTimeMillis();
+        AlarmStore store = AlarmStore.getInstance(context);
+        AlarmManagerImplementation implementation = new AlarmManagerImplementation(context);
+        if (zoneChanged) {
+            realignRecurring(store, implementation, now);
+        }
+
+        List<AlarmRecord> overdue = new ArrayList<>();
+        for (AlarmRecord record : store.getBetween(Long.MIN_VALUE, now - MISSED_AFTER_MS, null, null, Integer.MAX_VALUE)) {
+            if (isLate(record, record.at, now)) {
+                overdue.add(record);
+            }
+        }
+        if (overdue.isEmpty()) {
+            return 0;
+        }
+
+        Plan plan = plan(overdue, now);
+        if (!plan.finished.isEmpty()) {
+            implementation.cancelAlarms(plan.finished);
+        }
+        if (!plan.next.isEmpty()) {
+            implementation.setAlarms(plan.next);
+        }
+        AlarmPayloadStore payloads = AlarmPayloadStore.getInstance(context);
+        for (AlarmRecord record : plan.fire) {
+            payloads.retain(record); // Drift is not recorded: these are known to be late
+            AlarmReceiver.startAlarmService(context, record.alarmId, record.at);
+        }
+        if (!plan.collapse.isEmpty()) {
+            postMissedNotification(context, plan.collapse);
+        }
+
+        JSObject data = new JSObject();
+        data.put("reason", reason);
+        data.put("count", overdue.size());
+        data.put("fired", idsOf(plan.fire));
+        data.put("collapsed", idsOf(plan.collapse));
+        data.put("skipped", idsOf(plan.skip));
+        EventOutbox.getInstance(context).publish(EVENT_NAME, data);
+        Log.i(TAG, "Caught up on " + overdue.size() + " missed alarms (" + reason + "): " + plan.fire.size() + " fired, "
+                + plan.collapse.size() + " collapsed, " + plan.skip.size() + " skipped.");
+        return overdue.size();
+    }
+
+    /**
+     * What a catch-up pass does with its overdue alarms, split by missed policy.
+     */
+    static final class Plan {
+        final List<AlarmRecord> fire = new ArrayList<>(); // Ring now
+        final List<AlarmRecord> collapse = new ArrayList<>(); // Listed in one missed-alarms notification
+        final List<AlarmRecord> skip = new ArrayList<>(); // Dropped silently
+        final List<AlarmRecord> next = new ArrayList<>(); // Recurring alarms moved past now
+        final List<String> finished = new ArrayList<>(); // One-shot or exhausted alarms to remove
+    }
+
+    static Plan plan(List<AlarmRecord> overdue, long now) {
+        Plan plan = new Plan();
+        for (AlarmRecord record : overdue) {
+            String policy = record.missedPolicy != null ? record.missedPolicy : AlarmRecord.MISSED_FIRE;
+            if (AlarmRecord.MISSED_SKIP.equals(policy)) {
+                plan.skip.add(record);
+            } else if (AlarmRecord.MISSED_COLLAPSE.equals(policy)) {
+                plan.collapse.add(record);
+            } else {
+                plan.fire.add(record);
+            }
+            // Skip every occurrence that is already past, not just the one that was missed
+            AlarmRecord following = record.nextOccurrence(now);
+            if (following != null) {
+                plan.next.add(following);
+            } else {
+                plan.finished.add(record.alarmId);
+            }
+        }
+        return plan;
+    }
+
+    private static JSArray idsOf(List<AlarmRecord> records) {
+        JSArray ids = new JSArray();
+        for (AlarmRecord record : records) {
+            ids.put(record.alarmId);
+        }
+        return ids;
+    }
+
+    /**
+     * Recomputes the pending occurrence of every recurring alarm, so "every day at 7:00" still
+     * means 7:00 on the wall clock after the zone changed.
+     */
+    private static void realignRecurring(AlarmStore store, AlarmManagerImplementation implementation, long now) {
+        List<AlarmRecord> moved = new ArrayList<>();
+        for (AlarmRecord record : store.getAll()) {
+            Recurrence rule = record.getRecurrence();
+            if (rule == null || record.at <= now) {
+                continue; // Overdue ones are handled by the catch-up itself
+            }
+            long at = rule.nextAfter(record.firstAt, now, record.occurrence);
+            if (at < 0 || at == record.at) {
+                continue;
+            }
+            moved.add(record.movedTo(at));
+        }
+        if (!moved.isEmpty()) {
+            implementation.setAlarms(moved);
+            Log.i(TAG, "Moved " + moved.size() + " recurring alarms to the new time zone.");
+        }
+    }
+
+    private static void postMissedNotification(Context context, List<AlarmRecord> missed) {
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager == null) {
+            return;
+        }
+        PendingIntent mainAppPendingIntent = null;
+        Intent mainAppIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (mainAppIntent != null) {
+            mainAppIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            mainAppPendingIntent = PendingIntent.getActivity(
+                    context,
+                    MISSED_NOTIFICATION_ID + 100,
+                    mainAppIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0)
+            );
+        }
+        String title = missed.size() == 1 ? "You missed an alarm" : "You missed " + missed.size() + " alarms";
+        StringBuilder names = new StringBuilder();
+        for (AlarmRecord record : missed) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(record.name != null ? record.name : record.alarmId);
+        }
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, AlarmReceiver.ALARM_CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+                .setContentTitle(title)
+                .setContentText(names)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setContentIntent(mainAppPendingIntent)
+                .setAutoCancel(true);
+        notificationManager.notify(MISSED_NOTIFICATION_ID, builder.build());
+    }
+}
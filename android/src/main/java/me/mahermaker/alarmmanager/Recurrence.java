@@ -0,0 +1,330 @@
+package me.mahermaker.alarmmanager;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parsed subset of an iCalendar RRULE, evaluated lazily one occurrence at a time.
+ * Supported parts: FREQ (DAILY, WEEKLY, MONTHLY), INTERVAL, BYDAY (weekly), BYMONTHDAY (monthly),
+ * BYHOUR, BYMINUTE, COUNT and UNTIL. Parts that are omitted default to the corresponding field of
+ * the alarm's first {@code at}, interpreted in the device time zone.
+ */
+public class Recurrence {
+
+    public enum Frequency { DAILY, WEEKLY, MONTHLY }
+
+    // Days inside active periods to examine for a match before giving up; inactive periods are skipped
+    private static final int MAX_SCAN_DAYS = 366 * 10;
+
+    public final String rule;
+    final Frequency frequency;
+    final int interval;
+    final boolean[] byDay; // Indexed by DayOfWeek.getValue() (1 = Monday), null if not given
+    final int[] byMonthDay; // Sorted, null if not given
+    final int[] byHour; // Sorted, null if not given
+    final int[] byMinute; // Sorted, null if not given
+    final int count; // 0 = unlimited
+    final long until; // Epoch millis, Long.MAX_VALUE = unlimited
+
+    private Recurrence(String rule, Frequency frequency, int interval, boolean[] byDay, int[] byMonthDay,
+                       int[] byHour, int[] byMinute, int count, long until) {
+        this.rule = rule;
+        this.frequency = frequency;
+        this.interval = interval;
+        this.byDay = byDay;
+        this.byMonthDay = byMonthDay;
+        this.byHour = byHour;
+        this.byMinute = byMinute;
+        this.count = count;
+        this.until = until;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rule is malformed or uses unsupported parts.
+     */
+    public static Recurrence parse(String rule) {
+        if (rule == null || rule.isEmpty()) {
+            throw new IllegalArgumentException("Recurrence rule is empty");
+        }
+        String body = rule.startsWith("RRULE:") ? rule.substring(6) : rule;
+        Frequency frequency = null;
+        int interval = 1;
+        boolean[] byDay = null;
+        int[] byMonthDay = null;
+        int[] byHour = null;
+        int[] byMinute = null;
+        int count = 0;
+        long until = Long.MAX_VALUE;
+
+        for (String part : body.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Malformed recurrence part: " + part);
+            }
+            String key = part.substring(0, eq).trim().toUpperCase();
+            String value = part.substring(eq + 1).trim().toUpperCase();
+            switch (key) {
+                case "FREQ":
+                    try {
+                        frequency = Frequency.valueOf(value);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unsupported FREQ: " + value + " (use DAILY, WEEKLY or MONTHLY)");
+                    }
+                    break;
+                case "INTERVAL":
+                    interval = parseInt(key, value, 1, 1000);
+                    break;
+                case "BYDAY":
+                    byDay = new boolean[8];
+                    for (String day : value.split(",")) {
+                        byDay[parseDay(day.trim()).getValue()] = true;
+                    }
+                    break;
+                case "BYMONTHDAY":
+                    byMonthDay = parseList(key, value, 1, 31);
+                    break;
+                case "BYHOUR":
+                    byHour = parseList(key, value, 0, 23);
+                    break;
+                case "BYMINUTE":
+                    byMinute = parseList(key, value, 0, 59);
+                    break;
+                case "COUNT":
+                    count = parseInt(key, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "UNTIL":
+                    until = parseUntil(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported recurrence part: " + key);
+            }
+        }
+
+        if (frequency == null) {
+            throw new IllegalArgumentException("Recurrence rule is missing FREQ");
+        }
+        if (byDay != null && frequency != Frequency.WEEKLY) {
+            throw new IllegalArgumentException("BYDAY is only supported with FREQ=WEEKLY");
+        }
+        if (byMonthDay != null && frequency != Frequency.MONTHLY) {
+            throw new IllegalArgumentException("BYMONTHDAY is only supported with FREQ=MONTHLY");
+        }
+        return new Recurrence(rule, frequency, interval, byDay, byMonthDay, byHour, byMinute, count, until);
+    }
+
+    /**
+     * Computes the first occurrence strictly after {@code afterMillis}.
+     * @param firstAt the alarm's first trigger time, which anchors the interval and default fields.
+     * @param occurrence how many occurrences have already fired, checked against COUNT.
+     * @return the next trigger time in epoch millis, or -1 if the rule is exhausted.
+     */
+    public long nextAfter(long firstAt, long afterMillis, int occurrence) {
+        if (count > 0 && occurrence >= count) {
+            return -1;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime anchor = LocalDateTime.ofInstant(Instant.ofEpochMilli(firstAt), zone);
+        LocalDate anchorDate = anchor.toLocalDate();
+        LocalTime[] times = timesOfDay(anchor.toLocalTime());
+
+        long from = Math.max(afterMillis, firstAt - 1);
+        // One day of slack covers any UTC offset between "after" and its local date
+        LocalDate day = LocalDateTime.ofInstant(Instant.ofEpochMilli(from), zone).toLocalDate().minusDays(1);
+        if (day.isBefore(anchorDate)) {
+            day = anchorDate;
+        }
+
+        for (int scanned = 0; scanned < MAX_SCAN_DAYS; scanned++, day = day.plusDays(1)) {
+            day = firstActiveDay(anchorDate, day);
+            if (!matchesDay(anchorDate, day)) {
+                continue;
+            }
+            for (LocalTime time : times) {
+                long candidate = ZoneOffsetCache.toEpochMilli(zone, day.atTime(time));
+                if (candidate > until) {
+                    return -1;
+                }
+                if (candidate > from) {
+                    return candidate;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return {@code day} if it lies in a period (day, week or month) that INTERVAL selects, otherwise
+     * the first day of the next such period. Jumping keeps large intervals from exhausting the scan.
+     */
+    private LocalDate firstActiveDay(LocalDate anchorDate, LocalDate day) {
+        switch (frequency) {
+            case DAILY: {
+                long behind = ChronoUnit.DAYS.between(anchorDate, day) % interval;
+                return behind == 0 ? day : day.plusDays(interval - behind);
+            }
+            case WEEKLY: {
+                LocalDate anchorWeek = anchorDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                LocalDate week = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                long behind = ChronoUnit.WEEKS.between(anchorWeek, week) % interval;
+                return behind == 0 ? day : week.plusWeeks(interval - behind);
+            }
+            case MONTHLY: {
+                LocalDate month = day.withDayOfMonth(1);
+                long behind = ChronoUnit.MONTHS.between(anchorDate.withDayOfMonth(1), month) % interval;
+                return behind == 0 ? day : month.plusMonths(interval - behind);
+            }
+            default:
+                return day;
+        }
+    }
+
+    // Whether a day inside an active period has an occurrence
+    private boolean matchesDay(LocalDate anchorDate, LocalDate day) {
+        switch (frequency) {
+            case DAILY:
+                return true;
+            case WEEKLY:
+                return byDay != null ? byDay[day.getDayOfWeek().getValue()] : day.getDayOfWeek() == anchorDate.getDayOfWeek();
+            case MONTHLY: {
+                if (byMonthDay == null) {
+                    return day.getDayOfMonth() == anchorDate.getDayOfMonth(); // Months without that day are skipped
+                }
+                return Arrays.binarySearch(byMonthDay, day.getDayOfMonth()) >= 0;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private LocalTime[] timesOfDay(LocalTime anchorTime) {
+        int[] hours = byHour != null ? byHour : new int[] { anchorTime.getHour() };
+        int[] minutes = byMinute != null ? byMinute : new int[] { anchorTime.getMinute() };
+        int second = (byHour == null && byMinute == null) ? anchorTime.getSecond() : 0;
+        List<LocalTime> times = new ArrayList<>(hours.length * minutes.length);
+        for (int hour : hours) {
+            for (int minute : minutes) {
+                times.add(LocalTime.of(hour, minute, second));
+            }
+        }
+        return times.toArray(new LocalTime[0]);
+    }
+
+    private static int parseInt(String key, String value, int min, int max) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                throw new IllegalArgumentException(key + " out of range: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    private static int[] parseList(String key, String value, int min, int max) {
+        String[] items = value.split(",");
+        int[] parsed = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            parsed[i] = parseInt(key, items[i].trim(), min, max);
+        }
+        Arrays.sort(parsed);
+        return parsed;
+    }
+
+    private static DayOfWeek parseDay(String day) {
+        switch (day) {
+            case "MO": return DayOfWeek.MONDAY;
+            case "TU": return DayOfWeek.TUESDAY;
+            case "WE": return DayOfWeek.WEDNESDAY;
+            case "TH": return DayOfWeek.THURSDAY;
+            case "FR": return DayOfWeek.FRIDAY;
+            case "SA": return DayOfWeek.SATURDAY;
+            case "SU": return DayOfWeek.SUNDAY;
+            default: throw new IllegalArgumentException("Unsupported BYDAY value: " + day);
+        }
+    }
+
+    // Accepts the RRULE forms 20250131, 20250131T070000 (device zone) and 20250131T070000Z (UTC)
+    private static long parseUntil(String value) {
+        try {
+            boolean utc = value.endsWith("Z");
+            String digits = utc ? value.substring(0, value.length() - 1) : value;
+            LocalDate date = LocalDate.of(Integer.parseInt(digits.substring(0, 4)),
+                    Integer.parseInt(digits.substring(4, 6)), Integer.parseInt(digits.substring(6, 8)));
+            LocalDateTime dateTime = digits.length() > 8
+                    ? date.atTime(Integer.parseInt(digits.substring(9, 11)), Integer.parseInt(digits.substring(11, 13)),
+                            Integer.parseInt(digits.substring(13, 15)))
+                    : date.atTime(LocalTime.MAX);
+            return utc ? dateTime.toInstant(ZoneOffset.UTC).toEpochMilli()
+                    : ZonedDateTime.of(dateTime, ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid UNTIL: " + value);
+        }
+    }
+
+    /**
+     * Caches the UTC offset of the device zone between two transitions, so converting local
+     * occurrence times to instants is plain arithmetic instead of a rules lookup per candidate.
+     * Within a day of a transition, conversion falls back to the full zone rules so DST gaps and
+     * overlaps resolve exactly as {@link ZonedDateTime#of} would.
+     */
+    static final class ZoneOffsetCache {
+        private static final long MARGIN_SECONDS = 24 * 60 * 60;
+
+        private static volatile ZoneOffsetCache current;
+
+        final ZoneId zone;
+        final ZoneOffset offset;
+        final long validFromSecond; // Local epoch seconds (as if UTC) where the offset is unambiguous
+        final long validUntilSecond;
+
+        private ZoneOffsetCache(ZoneId zone, ZoneOffset offset, long validFromSecond, long validUntilSecond) {
+            this.zone = zone;
+            this.offset = offset;
+            this.validFromSecond = validFromSecond;
+            this.validUntilSecond = validUntilSecond;
+        }
+
+        static long toEpochMilli(ZoneId zone, LocalDateTime local) {
+            long localSecond = local.toEpochSecond(ZoneOffset.UTC);
+            ZoneOffsetCache cache = current;
+            if (cache != null && cache.zone.equals(zone)
+                    && localSecond >= cache.validFromSecond && localSecond < cache.validUntilSecond) {
+                return (localSecond - cache.offset.getTotalSeconds()) * 1000L + local.getNano() / 1_000_000;
+            }
+            ZonedDateTime resolved = ZonedDateTime.of(local, zone);
+            current = build(zone, resolved.toInstant());
+            return resolved.toInstant().toEpochMilli();
+        }
+
+        private static ZoneOffsetCache build(ZoneId zone, Instant instant) {
+            ZoneRules rules = zone.getRules();
+            ZoneOffset offset = rules.getOffset(instant);
+            if (rules.isFixedOffset()) {
+                return new ZoneOffsetCache(zone, offset, Long.MIN_VALUE, Long.MAX_VALUE);
+            }
+            ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            long from = previous != null
+                    ? previous.getInstant().getEpochSecond() + offset.getTotalSeconds() + MARGIN_SECONDS
+                    : Long.MIN_VALUE;
+            long until = next != null
+                    ? next.getInstant().getEpochSecond() + offset.getTotalSeconds() - MARGIN_SECONDS
+                    : Long.MAX_VALUE;
+            return new ZoneOffsetCache(zone, offset, from, until);
+        }
+    }
+}
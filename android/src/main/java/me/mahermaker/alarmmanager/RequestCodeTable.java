@@ -0,0 +1,328 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Interns alarm IDs into unique PendingIntent request codes, replacing {@code alarmId.hashCode()}
+ * (which collides across tens of thousands of IDs) and the snooze's {@code hashCode() + 1}.
+ * Every ID that has an OS alarm armed owns a slot; the request code is {@link #CODE_BASE} + slot,
+ * well clear of the plugin's fixed codes. Slots are returned to a free list when the alarm is
+ * cancelled or has fired, and reused.
+ * The ID -> slot map is an open-addressing table over plain arrays (linear probing, backward-shift
+ * deletion), so lookups neither box nor allocate. Assignments are persisted like AlarmStore: an
+ * append-only log folded into a snapshot past {@link #COMPACT_THRESHOLD} operations.
+ */
+public class RequestCodeTable {
+    private static final String TAG = "RequestCodeTable";
+    private static final String DIR_NAME = "alarm_request_codes";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "log.bin";
+    private static final int SNAPSHOT_MAGIC = 0x52435431; // "RCT1"
+    private static final byte OP_ASSIGN = 1;
+    private static final byte OP_FREE = 2;
+    private static final int COMPACT_THRESHOLD = 1024; // Log operations before folding into a snapshot
+    public static final int CODE_BASE = 0x100000;
+    public static final int NO_CODE = -1;
+
+    private static RequestCodeTable instance;
+
+    private final File snapshotFile;
+    private final File logFile;
+    private DataOutputStream log;
+    private int logOps;
+
+    // Open-addressing map: keys[i] == null means empty, values[i] is the slot of keys[i]
+    private String[] keys = new String[64];
+    private int[] values = new int[64];
+    private int size;
+
+    private String[] idsBySlot = new String[64]; // Reverse map, null for free slots
+    private int nextSlot; // Slots below this have been handed out at least once
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    public static synchronized RequestCodeTable getInstance(Context context) {
+        if (instance == null) {
+            instance = new RequestCodeTable(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RequestCodeTable(Context context) {
+        this(new File(DeviceStorage.get(context).getFilesDir(), DIR_NAME));
+    }
+
+    // Opens the table kept in dir
+    RequestCodeTable(File dir) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create request code directory: " + dir);
+        }
+        this.snapshotFile = new File(dir, SNAPSHOT_FILE);
+        this.logFile = new File(dir, LOG_FILE);
+        load();
+    }
+
+    /**
+     * @return the request code of {@code alarmId}, assigning one if it has none. The assignment is
+     * buffered until {@link #flush()}.
+     */
+    public synchronized int intern(String alarmId) {
+        int index = find(alarmId);
+        if (keys[index] != null) {
+            return CODE_BASE + values[index];
+        }
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        assign(slot, alarmId);
+        append(OP_ASSIGN, slot, alarmId);
+        return CODE_BASE + slot;
+    }
+
+    /**
+     * @return the request code of {@code alarmId}, or {@link #NO_CODE} if it has none.
+     */
+    public synchronized int get(String alarmId) {
+        int index = find(alarmId);
+        return keys[index] != null ? CODE_BASE + values[index] : NO_CODE;
+    }
+
+    /**
+     * Returns the slot of {@code alarmId} to the free list. Only call once its OS alarm is gone.
+     */
+    public synchronized void free(String alarmId) {
+        int index = find(alarmId);
+        if (keys[index] == null) {
+            return;
+        }
+        int slot = values[index];
+        removeAt(index);
+        idsBySlot[slot] = null;
+        pushFree(slot);
+        append(OP_FREE, slot, null);
+    }
+
+    /**
+     * Writes buffered assignments to disk. Called at the end of every scheduling batch.
+     */
+    public synchronized void flush() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to flush request code log.", e);
+        }
+        if (logOps >= COMPACT_THRESHOLD && logOps > size) {
+            compact();
+        }
+    }
+
+    // Index of alarmId in keys, or of the empty cell where it would go
+    private int find(String alarmId) {
+        int mask = keys.length - 1;
+        int index = mix(alarmId.hashCode()) & mask;
+        while (keys[index] != null && !keys[index].equals(alarmId)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9; // Spreads IDs that differ only in their last characters
+        return hash ^ (hash >>> 16);
+    }
+
+    private void assign(int slot, String alarmId) {
+        if (slot >= idsBySlot.length) {
+            idsBySlot = Arrays.copyOf(idsBySlot, Math.max(idsBySlot.length * 2, slot + 1));
+        }
+        String previous = idsBySlot[slot];
+        if (previous != null && !previous.equals(alarmId)) {
+            removeAt(find(previous)); // Only when replaying a log over a stale snapshot
+        }
+        idsBySlot[slot] = alarmId;
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int index = find(alarmId);
+        if (keys[index] == null) {
+            keys[index] = alarmId;
+            size++;
+        }
+        values[index] = slot;
+    }
+
+    private void removeAt(int index) {
+        int mask = keys.length - 1;
+        keys[index] = null;
+        size--;
+        // Backward-shift deletion: move later entries of the probe run into the hole, no tombstones
+        int hole = index;
+        int next = (index + 1) & mask;
+        while (keys[next] != null) {
+            int home = mix(keys[next].hashCode()) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                keys[next] = null;
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = find(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void pushFree(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void append(byte op, int slot, String alarmId) {
+        try {
+            if (log == null) {
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+            }
+            log.writeByte(op);
+            log.writeInt(slot);
+            if (op == OP_ASSIGN) {
+                AlarmRecord.writeString(log, alarmId);
+            }
+            logOps++;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to request code log.", e);
+        }
+    }
+
+    /**
+     * Writes all assignments to a fresh snapshot and truncates the log.
+     */
+    private void compact() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing request code log.", e);
+            }
+            log = null;
+        }
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(nextSlot);
+            out.writeInt(size);
+            for (int slot = 0; slot < nextSlot; slot++) {
+                if (idsBySlot[slot] != null) {
+                    out.writeInt(slot);
+                    AlarmRecord.writeString(out, idsBySlot[slot]);
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write request code snapshot, keeping log.", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            Log.e(TAG, "Failed to replace request code snapshot, keeping log.");
+            tmp.delete();
+            return;
+        }
+        logFile.delete();
+        logOps = 0;
+        Log.d(TAG, "Compacted request codes to " + size + " assignments.");
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Bad snapshot header");
+                }
+                nextSlot = in.readInt();
+                int count = in.readInt();
+                if (count * 2 > keys.length) {
+                    keys = new String[Integer.highestOneBit(count * 2) << 1]; // Sized once, no rehash while loading
+                    values = new int[keys.length];
+                }
+                for (int i = 0; i < count; i++) {
+                    assign(in.readInt(), AlarmRecord.readString(in));
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Request code snapshot unreadable, continuing with " + size + " assignments.", e);
+            }
+        }
+
+        boolean tornTail = false;
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                while (true) {
+                    int op = in.read();
+                    if (op == -1) {
+                        break;
+                    }
+                    int slot = in.readInt();
+                    if (op == OP_ASSIGN) {
+                        assign(slot, AlarmRecord.readString(in));
+                        nextSlot = Math.max(nextSlot, slot + 1);
+                    } else if (op == OP_FREE) {
+                        if (slot < idsBySlot.length && idsBySlot[slot] != null) {
+                            removeAt(find(idsBySlot[slot]));
+                            idsBySlot[slot] = null;
+                        }
+                    } else {
+                        throw new IOException("Unknown log op: " + op);
+                    }
+                    logOps++;
+                }
+            } catch (EOFException e) {
+                tornTail = true;
+                Log.w(TAG, "Request code log ends with a partial entry, discarding it.");
+            } catch (IOException e) {
+                tornTail = true;
+                Log.e(TAG, "Request code log unreadable past entry " + logOps + ", discarding the rest.", e);
+            }
+        }
+
+        // Every slot handed out before but not assigned now is free
+        for (int slot = nextSlot - 1; slot >= 0; slot--) {
+            if (slot >= idsBySlot.length || idsBySlot[slot] == null) {
+                pushFree(slot);
+            }
+        }
+        if (tornTail) {
+            compact(); // Rewrite a clean snapshot so new appends don't follow garbage
+        }
+        Log.d(TAG, "Loaded " + size + " request codes (" + freeCount + " free slots) in "
+                + (System.currentTimeMillis() - start) + " ms.");
+    }
+}
@@ -0,0 +1,309 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide single writer of the schedule (AlarmStore, AlarmQueue and the request codes of
+ * scheduled alarms). Plugin calls, fired alarms being advanced, and the boot and clock-change
+ * catch-up all run on its one background thread, so AlarmManager Binder calls, PendingIntent
+ * creation and store writes never hold up the bridge or a receiver, and never interleave.
+ * Commands are queued in call order and drained in runs: consecutive set and cancel
+ * commands are coalesced per alarm ID before anything reaches the OS, so e.g. a set followed by a
+ * cancel of a new alarm makes no system call at all, and a burst of single-alarm calls becomes one
+ * batched store write. Other commands (sync, reads) run in order between those runs, so every call
+ * sees the effect of the calls made before it.
+ * The queue is bounded for plugin calls; {@link #submitSet} and friends return false when it is
+ * full. Work from receivers ({@link #execute}) is always accepted.
+ */
+public class SchedulingExecutor {
+    private static final String TAG = "SchedulingExecutor";
+    public static final int MAX_PENDING_COMMANDS = 256;
+
+    public interface Callback<T> {
+        void done(T result);
+    }
+
+    private static SchedulingExecutor instance;
+
+    private final AlarmManagerImplementation implementation;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // The only thread that writes the schedule
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+    private boolean draining;
+
+    private abstract static class Command {
+    }
+
+    // Set and cancel carry per-alarm items so runs of them can be coalesced
+    private static final class SetCommand extends Command {
+        final List<AlarmRecord> records;
+        final Callback<boolean[]> callback;
+        final boolean[] results;
+
+        SetCommand(List<AlarmRecord> records, Callback<boolean[]> callback) {
+            this.records = records;
+            this.callback = callback;
+            this.results = new boolean[records.size()];
+        }
+    }
+
+    private static final class CancelCommand extends Command {
+        final List<String> alarmIds;
+        final Callback<boolean[]> callback;
+        final boolean[] results;
+
+        CancelCommand(List<String> alarmIds, Callback<boolean[]> callback) {
+            this.alarmIds = alarmIds;
+            this.callback = callback;
+            this.results = new boolean[alarmIds.size()];
+        }
+    }
+
+    private static final class TaskCommand extends Command {
+        final Runnable task;
+
+        TaskCommand(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    // Where the final operation on an alarm ID within a run came from
+    private static final class Slot {
+        final Command command;
+        final int index;
+
+        Slot(Command command, int index) {
+            this.command = command;
+            this.index = index;
+        }
+    }
+
+    /**
+     * @return the process-wide executor. It lives as long as the process, so a plugin that is
+     * destroyed and reloaded keeps submitting to the same thread.
+     */
+    public static synchronized SchedulingExecutor getInstance(Context context) {
+        if (instance == null) {
+            instance = new SchedulingExecutor(new AlarmManagerImplementation(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    SchedulingExecutor(AlarmManagerImplementation implementation) {
+        this.implementation = implementation;
+    }
+
+    /**
+     * Queues scheduling of {@code records}; {@code callback} gets one success flag per record.
+     * @return false if the queue is full and the command was not accepted.
+     */
+    public boolean submitSet(List<AlarmRecord> records, Callback<boolean[]> callback) {
+        return submit(new SetCommand(records, callback));
+    }
+
+    /**
+     * Queues cancellation of {@code alarmIds}; {@code callback} gets one flag per ID, true if it was found.
+     * @return false if the queue is full and the command was not accepted.
+     */
+    public boolean submitCancel(List<String> alarmIds, Callback<boolean[]> callback) {
+        return submit(new CancelCommand(alarmIds, callback));
+    }
+
+    /**
+     * Queues any other work (sync, reads) to run after every command submitted before it.
+     * @return false if the queue is full and the command was not accepted.
+     */
+    public boolean submitTask(Runnable task) {
+        return submit(new TaskCommand(task));
+    }
+
+    /**
+     * Queues schedule writes made outside plugin calls: fired alarms moving on, boot and
+     * clock-change catch-up. Never rejected, since dropping them would lose alarms.
+     */
+    public void execute(Runnable task) {
+        submit(new TaskCommand(task), false);
+    }
+
+    private boolean submit(Command command) {
+        return submit(command, true);
+    }
+
+    private boolean submit(Command command, boolean bounded) {
+        synchronized (pending) {
+            if (bounded && pending.size() >= MAX_PENDING_COMMANDS) {
+                Log.w(TAG, "Scheduling queue full (" + MAX_PENDING_COMMANDS + " commands), rejecting.");
+                return false;
+            }
+            pending.addLast(command);
+            if (!draining) {
+                draining = true;
+                executor.execute(this::drain);
+            }
+        }
+        return true;
+    }
+
+    private void drain() {
+        while (true) {
+            List<Command> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            int start = 0;
+            while (start < batch.size()) {
+                Command command = batch.get(start);
+                if (command instanceof TaskCommand) {
+                    run(((TaskCommand) command).task);
+                    start++;
+                    continue;
+                }
+                int end = start;
+                while (end < batch.size() && !(batch.get(end) instanceof TaskCommand)) {
+                    end++;
+                }
+                runCoalesced(batch.subList(start, end));
+                start = end;
+            }
+        }
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Scheduling task failed.", e);
+        }
+    }
+
+    /**
+     * Applies a run of set and cancel commands as one cancelAlarms and one setAlarms call. Only the
+     * last operation on each alarm ID reaches the OS; earlier ones are answered as if they had run.
+     */
+    private void runCoalesced(List<Command> commands) {
+        HashMap<String, Slot> last = new HashMap<>();
+        int operations = 0;
+        for (Command command : commands) {
+            int size = command instanceof SetCommand ? ((SetCommand) command).records.size() : ((CancelCommand) command).alarmIds.size();
+            for (int i = 0; i < size; i++) {
+                last.put(idAt(command, i), new Slot(command, i));
+            }
+            operations += size;
+        }
+
+        try {
+            applyCoalesced(commands, last, operations);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Applying scheduling commands failed.", e); // Unset results stay false
+        }
+
+        for (Command command : commands) {
+            if (command instanceof SetCommand) {
+                SetCommand set = (SetCommand) command;
+                run(() -> set.callback.done(set.results));
+            } else {
+                CancelCommand cancel = (CancelCommand) command;
+                run(() -> cancel.callback.done(cancel.results));
+            }
+        }
+    }
+
+    private void applyCoalesced(List<Command> commands, HashMap<String, Slot> last, int operations) {
+        boolean canScheduleExact = canScheduleExact();
+        HashMap<String, Boolean> present = new HashMap<>(); // Whether the ID is scheduled at this point of the run
+        List<AlarmRecord> toSet = new ArrayList<>();
+        List<Slot> setSlots = new ArrayList<>();
+        List<String> toCancel = new ArrayList<>();
+        List<Slot> cancelSlots = new ArrayList<>();
+        for (Command command : commands) {
+            if (command instanceof SetCommand) {
+                SetCommand set = (SetCommand) command;
+                for (int i = 0; i < set.records.size(); i++) {
+                    AlarmRecord record = set.records.get(i);
+                    Slot slot = last.get(record.alarmId);
+                    if (slot.command == command && slot.index == i) {
+                        toSet.add(record);
+                        setSlots.add(slot);
+                    } else {
+                        // Replaced or cancelled later in the run; report what setting it would have done
+                        set.results[i] = !(record.exact && !canScheduleExact);
+                        if (set.results[i]) {
+                            present.put(record.alarmId, true);
+                        }
+                    }
+                }
+            } else {
+                CancelCommand cancel = (CancelCommand) command;
+                for (int i = 0; i < cancel.alarmIds.size(); i++) {
+                    String alarmId = cancel.alarmIds.get(i);
+                    Boolean wasPresent = present.get(alarmId);
+                    boolean stored = isStored(alarmId);
+                    Slot slot = last.get(alarmId);
+                    if (slot.command == command && slot.index == i && (stored || wasPresent == null)) {
+                        // Something may be armed from before this run (or unknown to the store): cancel it
+                        toCancel.add(alarmId);
+                        cancelSlots.add(slot);
+                    } else {
+                        // Either set again later in the run, or only set within it and never armed
+                        cancel.results[i] = wasPresent != null ? wasPresent : stored;
+                    }
+                    present.put(alarmId, false);
+                }
+            }
+        }
+
+        if (!toCancel.isEmpty()) {
+            boolean[] cancelled = cancelAlarms(toCancel);
+            for (int i = 0; i < cancelSlots.size(); i++) {
+                Slot slot = cancelSlots.get(i);
+                ((CancelCommand) slot.command).results[slot.index] = cancelled[i];
+            }
+        }
+        if (!toSet.isEmpty()) {
+            boolean[] scheduled = setAlarms(toSet);
+            for (int i = 0; i < setSlots.size(); i++) {
+                Slot slot = setSlots.get(i);
+                ((SetCommand) slot.command).results[slot.index] = scheduled[i];
+            }
+        }
+        int coalesced = operations - toSet.size() - toCancel.size();
+        if (coalesced > 0) {
+            Log.d(TAG, "Coalesced " + coalesced + " of " + operations + " operations from " + commands.size() + " commands.");
+        }
+    }
+
+    // The schedule a coalesced run is applied to; package-private so tests can stand in for it
+    boolean canScheduleExact() {
+        return implementation.canScheduleExactAlarms();
+    }
+
+    boolean isStored(String alarmId) {
+        return AlarmStore.getInstance(implementation.getContext()).contains(alarmId);
+    }
+
+    boolean[] cancelAlarms(List<String> alarmIds) {
+        return implementation.cancelAlarms(alarmIds);
+    }
+
+    boolean[] setAlarms(List<AlarmRecord> records) {
+        return implementation.setAlarms(records);
+    }
+
+    private static String idAt(Command command, int index) {
+        return command instanceof SetCommand
+                ? ((SetCommand) command).records.get(index).alarmId
+                : ((CancelCommand) command).alarmIds.get(index);
+    }
+}
@@ -0,0 +1,363 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Alarm sounds decoded to 16-bit PCM ahead of time, so ringing never waits on MediaPlayer
+ * preparation or the ringtone provider. Sounds are decoded in the background when an alarm is set
+ * and kept in app storage; the least recently used files are evicted once the cache exceeds
+ * {@link #MAX_CACHE_BYTES}.
+ */
+public class SoundCache {
+    private static final String TAG = "SoundCache";
+    private static final String DIR_NAME = "alarm_sounds";
+    private static final int FILE_VERSION = 1;
+    private static final long MAX_CACHE_BYTES = 24L * 1024 * 1024;
+    private static final int MAX_SECONDS = 15; // Longer sounds are cut here and looped, like MediaPlayer.setLooping
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    private static final int TONE_SAMPLE_RATE = 22050;
+    private static final double TONE_HZ = 880;
+
+    private static SoundCache instance;
+    private static Pcm builtinTone;
+
+    private final Context context;
+    private final File dir;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Decoding is CPU-heavy, one at a time
+    private final Set<String> pending = new HashSet<>(); // URIs queued or being decoded
+
+    /**
+     * A decoded sound: interleaved 16-bit little-endian samples.
+     */
+    public static final class Pcm {
+        public final int sampleRate;
+        public final int channelCount;
+        public final byte[] data;
+
+        Pcm(int sampleRate, int channelCount, byte[] data) {
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.data = data;
+        }
+
+        public int frameCount() {
+            return data.length / (2 * channelCount);
+        }
+    }
+
+    public static synchronized SoundCache getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new SoundCache(appContext, new File(DeviceStorage.get(context).getFilesDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    private SoundCache(Context context, File dir) {
+        this.context = context;
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Could not create sound cache directory: " + dir);
+        }
+    }
+
+    /**
+     * @return the sound this alarm will play: its soundUri, or the current default alarm sound.
+     */
+    public static Uri resolve(Context context, AlarmRecord record) {
+        if (record != null && record.soundUri != null) {
+            return Uri.parse(record.soundUri);
+        }
+        Uri actual = RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_ALARM);
+        return actual != null ? actual : Settings.System.DEFAULT_ALARM_ALERT_URI;
+    }
+
+    /**
+     * The last-resort alarm sound: two 880 Hz beeps and a pause (1.2 s, looped), generated in
+     * memory so it depends on neither storage nor any provider.
+     */
+    public static synchronized Pcm builtinTone() {
+        if (builtinTone == null) {
+            int frames = TONE_SAMPLE_RATE * 6 / 5;
+            int beep = TONE_SAMPLE_RATE / 4;
+            int fade = TONE_SAMPLE_RATE / 200; // 5 ms ramps avoid clicks at the beep edges
+            byte[] data = new byte[frames * 2];
+            for (int i = 0; i < frames; i++) {
+                int inBeep = i % (beep * 2); // beep, gap, beep, gap, then silence
+                if (i >= beep * 4 || inBeep >= beep) {
+                    continue;
+                }
+                double envelope = Math.min(1.0, Math.min(inBeep, beep - inBeep) / (double) fade);
+                short sample = (short) (Math.sin(2 * Math.PI * TONE_HZ * i / TONE_SAMPLE_RATE) * envelope * 0.8 * Short.MAX_VALUE);
+                data[2 * i] = (byte) sample; // Little-endian
+                data[2 * i + 1] = (byte) (sample >> 8);
+            }
+            builtinTone = new Pcm(TONE_SAMPLE_RATE, 1, data);
+        }
+        return builtinTone;
+    }
+
+    /**
+     * Decodes the sounds of these alarms in the background unless they are already cached.
+     */
+    public void prefetch(Iterable<AlarmRecord> records) {
+        Set<Uri> uris = new HashSet<>();
+        for (AlarmRecord record : records) {
+            uris.add(resolve(context, record));
+        }
+        for (Uri uri : uris) {
+            prefetch(uri);
+        }
+    }
+
+    public void prefetch(Uri uri) {
+        if (uri == null) {
+            return;
+        }
+        String key = uri.toString();
+        synchronized (this) {
+            if (fileFor(key).exists() || !pending.add(key)) {
+                return;
+            }
+        }
+        executor.execute(() -> {
+            try {
+                decodeToFile(uri);
+            } finally {
+                synchronized (this) {
+                    pending.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads a cached sound. Called on the fire path, so it only touches app storage.
+     * @return the decoded sound, or null if it has not been cached (yet).
+     */
+    public synchronized Pcm get(Uri uri) {
+        if (uri == null) {
+            return null;
+        }
+        String key = uri.toString();
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION || !key.equals(AlarmRecord.readString(in))) {
+                return null; // Old format or a hash collision, treat as a miss
+            }
+            int sampleRate = in.readInt();
+            int channelCount = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            if (!file.setLastModified(System.currentTimeMillis())) { // Marks it recently used for eviction
+                Log.w(TAG, "Could not touch cached sound " + file.getName());
+            }
+            return new Pcm(sampleRate, channelCount, data);
+        } catch (IOException e) {
+            Log.e(TAG, "Cached sound for " + key + " is unreadable, dropping it.", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void decodeToFile(Uri uri) {
+        String key = uri.toString();
+        long started = System.currentTimeMillis();
+        Pcm pcm;
+        try {
+            pcm = decode(uri);
+        } catch (IOException | RuntimeException e) {
+            // Ringing falls back to MediaPlayer for this sound
+            Log.w(TAG, "Could not decode alarm sound " + key + ": " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            File file = fileFor(key);
+            File tmp = new File(dir, file.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(FILE_VERSION);
+                AlarmRecord.writeString(out, key);
+                out.writeInt(pcm.sampleRate);
+                out.writeInt(pcm.channelCount);
+                out.writeInt(pcm.data.length);
+                out.write(pcm.data);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write cached sound for " + key, e);
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                Log.e(TAG, "Failed to move cached sound into place for " + key);
+                tmp.delete();
+                return;
+            }
+            evict();
+        }
+        Log.i(TAG, "Cached alarm sound " + key + " (" + pcm.data.length + " bytes, "
+                + (System.currentTimeMillis() - started) + " ms)");
+    }
+
+    private static final class Decoding {
+        int sampleRate;
+        int channelCount;
+        long maxBytes;
+
+        void setFormat(MediaFormat format) throws IOException {
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            if (channelCount < 1 || channelCount > 2) {
+                throw new IOException("Unsupported channel count " + channelCount);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                    && format.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                throw new IOException("Decoder output is not 16-bit PCM");
+            }
+            maxBytes = (long) sampleRate * channelCount * 2 * MAX_SECONDS;
+        }
+    }
+
+    private Pcm decode(Uri uri) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track");
+            }
+            Decoding decoding = new Decoding();
+            decoding.setFormat(format);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            byte[] chunk = new byte[0];
+            boolean inputDone = false;
+            while (pcm.size() < decoding.maxBytes) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        int size = extractor.readSampleData(codec.getInputBuffer(inIndex), 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int outIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    decoding.setFormat(codec.getOutputFormat()); // Actual output rate/channels may differ from the track's
+                } else if (outIndex >= 0) {
+                    ByteBuffer out = codec.getOutputBuffer(outIndex);
+                    if (out != null && info.size > 0) {
+                        if (chunk.length < info.size) {
+                            chunk = new byte[info.size];
+                        }
+                        out.position(info.offset);
+                        out.get(chunk, 0, info.size);
+                        pcm.write(chunk, 0, info.size);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            int frameBytes = 2 * decoding.channelCount;
+            int length = (int) Math.min(pcm.size(), decoding.maxBytes) / frameBytes * frameBytes;
+            if (length == 0) {
+                throw new IOException("Sound decoded to no samples");
+            }
+            return new Pcm(decoding.sampleRate, decoding.channelCount, Arrays.copyOf(pcm.toByteArray(), length));
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                    // Never started
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    // Least recently used first, by the mtime get() refreshes
+    private void evict() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                Log.d(TAG, "Evicted cached sound " + file.getName());
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        // URIs can exceed file name limits, so name files by a 64-bit hash; the header holds the full URI
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return new File(dir, Long.toHexString(hash) + ".pcm");
+    }
+}
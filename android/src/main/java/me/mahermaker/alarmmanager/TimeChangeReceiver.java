@@ -0,0 +1,37 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Runs the missed-alarm catch-up when the wall clock is set or the time zone changes. RTC alarms
+ * armed for the old clock are not re-evaluated by the OS, so alarms the jump skipped over are
+ * settled here and recurring alarms are moved to their wall-clock time in the new zone.
+ */
+public class TimeChangeReceiver extends BroadcastReceiver {
+    private static final String TAG = "TimeChangeReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent != null ? intent.getAction() : null;
+        boolean zoneChanged = Intent.ACTION_TIMEZONE_CHANGED.equals(action);
+        if (!zoneChanged && !Intent.ACTION_TIME_CHANGED.equals(action)) {
+            Log.w(TAG, "Received intent with unexpected action: " + action);
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        Log.d(TAG, "Clock changed (" + action + "), checking for missed alarms.");
+        final PendingResult pendingResult = goAsync();
+        SchedulingExecutor.getInstance(appContext).execute(() -> {
+            try {
+                MissedAlarms.catchUp(appContext, MissedAlarms.REASON_TIME_CHANGE, zoneChanged);
+            } catch (Exception e) {
+                Log.e(TAG, "Error while catching up after a clock change", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+}
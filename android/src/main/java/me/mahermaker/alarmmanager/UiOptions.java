@@ -0,0 +1,178 @@
+package me.mahermaker.alarmmanager;
+
+import android.graphics.Color;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import org.json.JSONObject;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * uiOptions compiled once at {@code set()} time: colors are resolved to ARGB ints, texts are
+ * interned and a bitmask records which fields were given. The ringing screen applies it without
+ * parsing any JSON or color strings. Instances are immutable.
+ */
+public final class UiOptions {
+
+    static final int TITLE_TEXT = 1;
+    static final int TITLE_COLOR = 1 << 1;
+    static final int ALARM_NAME_TEXT = 1 << 2;
+    static final int ALARM_NAME_COLOR = 1 << 3;
+    static final int BACKGROUND_COLOR = 1 << 4;
+    static final int DISMISS_TEXT = 1 << 5;
+    static final int DISMISS_BACKGROUND_COLOR = 1 << 6;
+    static final int DISMISS_TEXT_COLOR = 1 << 7;
+    static final int SNOOZE_TEXT = 1 << 8;
+    static final int SNOOZE_BACKGROUND_COLOR = 1 << 9;
+    static final int SNOOZE_TEXT_COLOR = 1 << 10;
+
+    public final int present; // Bitmask of the fields above that were set
+    public final String titleText;
+    public final int titleColor;
+    public final String alarmNameText;
+    public final int alarmNameColor;
+    public final int backgroundColor;
+    public final String dismissButtonText;
+    public final int dismissButtonBackgroundColor;
+    public final int dismissButtonTextColor;
+    public final String snoozeButtonText;
+    public final int snoozeButtonBackgroundColor;
+    public final int snoozeButtonTextColor;
+
+    private UiOptions(int present, String titleText, int titleColor, String alarmNameText, int alarmNameColor,
+                      int backgroundColor, String dismissButtonText, int dismissButtonBackgroundColor,
+                      int dismissButtonTextColor, String snoozeButtonText, int snoozeButtonBackgroundColor,
+                      int snoozeButtonTextColor) {
+        this.present = present;
+        this.titleText = titleText;
+        this.titleColor = titleColor;
+        this.alarmNameText = alarmNameText;
+        this.alarmNameColor = alarmNameColor;
+        this.backgroundColor = backgroundColor;
+        this.dismissButtonText = dismissButtonText;
+        this.dismissButtonBackgroundColor = dismissButtonBackgroundColor;
+        this.dismissButtonTextColor = dismissButtonTextColor;
+        this.snoozeButtonText = snoozeButtonText;
+        this.snoozeButtonBackgroundColor = snoozeButtonBackgroundColor;
+        this.snoozeButtonTextColor = snoozeButtonTextColor;
+    }
+
+    public boolean has(int field) {
+        return (present & field) != 0;
+    }
+
+    /**
+     * Validates and compiles the uiOptions object passed to {@code set()}. Empty strings are
+     * treated as absent, as they were when the activity read the JSON directly.
+     * @throws IllegalArgumentException naming the field if a color cannot be parsed.
+     */
+    public static UiOptions compile(JSONObject json) {
+        Builder b = new Builder(json);
+        String titleText = b.text("titleText", TITLE_TEXT);
+        int titleColor = b.color("titleColor", TITLE_COLOR);
+        String alarmNameText = b.text("alarmNameText", ALARM_NAME_TEXT);
+        int alarmNameColor = b.color("alarmNameColor", ALARM_NAME_COLOR);
+        int backgroundColor = b.color("backgroundColor", BACKGROUND_COLOR);
+        String dismissText = b.text("dismissButtonText", DISMISS_TEXT);
+        int dismissBackground = b.color("dismissButtonBackgroundColor", DISMISS_BACKGROUND_COLOR);
+        int dismissTextColor = b.color("dismissButtonTextColor", DISMISS_TEXT_COLOR);
+        String snoozeText = b.text("snoozeButtonText", SNOOZE_TEXT);
+        int snoozeBackground = b.color("snoozeButtonBackgroundColor", SNOOZE_BACKGROUND_COLOR);
+        int snoozeTextColor = b.color("snoozeButtonTextColor", SNOOZE_TEXT_COLOR);
+        return new UiOptions(b.present, titleText, titleColor, alarmNameText, alarmNameColor, backgroundColor,
+                dismissText, dismissBackground, dismissTextColor, snoozeText, snoozeBackground, snoozeTextColor);
+    }
+
+    /**
+     * Applies only the fields that were set; everything else keeps the layout's defaults.
+     */
+    public void applyTo(View layout, TextView titleView, TextView nameView, Button dismissButton, Button snoozeButton) {
+        if (has(BACKGROUND_COLOR)) layout.setBackgroundColor(backgroundColor);
+        if (has(TITLE_TEXT)) titleView.setText(titleText);
+        if (has(TITLE_COLOR)) titleView.setTextColor(titleColor);
+        if (has(ALARM_NAME_TEXT)) nameView.setText(alarmNameText);
+        if (has(ALARM_NAME_COLOR)) nameView.setTextColor(alarmNameColor);
+        if (has(DISMISS_TEXT)) dismissButton.setText(dismissButtonText);
+        if (has(DISMISS_BACKGROUND_COLOR)) dismissButton.setBackgroundColor(dismissButtonBackgroundColor);
+        if (has(DISMISS_TEXT_COLOR)) dismissButton.setTextColor(dismissButtonTextColor);
+        if (has(SNOOZE_TEXT)) snoozeButton.setText(snoozeButtonText);
+        if (has(SNOOZE_BACKGROUND_COLOR)) snoozeButton.setBackgroundColor(snoozeButtonBackgroundColor);
+        if (has(SNOOZE_TEXT_COLOR)) snoozeButton.setTextColor(snoozeButtonTextColor);
+    }
+
+    /**
+     * Writes the compiled form used by AlarmStore. Only present fields are written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeShort(present);
+        if (has(TITLE_TEXT)) AlarmRecord.writeString(out, titleText);
+        if (has(TITLE_COLOR)) out.writeInt(titleColor);
+        if (has(ALARM_NAME_TEXT)) AlarmRecord.writeString(out, alarmNameText);
+        if (has(ALARM_NAME_COLOR)) out.writeInt(alarmNameColor);
+        if (has(BACKGROUND_COLOR)) out.writeInt(backgroundColor);
+        if (has(DISMISS_TEXT)) AlarmRecord.writeString(out, dismissButtonText);
+        if (has(DISMISS_BACKGROUND_COLOR)) out.writeInt(dismissButtonBackgroundColor);
+        if (has(DISMISS_TEXT_COLOR)) out.writeInt(dismissButtonTextColor);
+        if (has(SNOOZE_TEXT)) AlarmRecord.writeString(out, snoozeButtonText);
+        if (has(SNOOZE_BACKGROUND_COLOR)) out.writeInt(snoozeButtonBackgroundColor);
+        if (has(SNOOZE_TEXT_COLOR)) out.writeInt(snoozeButtonTextColor);
+    }
+
+    public static UiOptions readFrom(DataInput in) throws IOException {
+        int present = in.readUnsignedShort();
+        return new UiOptions(present,
+                (present & TITLE_TEXT) != 0 ? intern(AlarmRecord.readString(in)) : null,
+                (present & TITLE_COLOR) != 0 ? in.readInt() : 0,
+                (present & ALARM_NAME_TEXT) != 0 ? intern(AlarmRecord.readString(in)) : null,
+                (present & ALARM_NAME_COLOR) != 0 ? in.readInt() : 0,
+                (present & BACKGROUND_COLOR) != 0 ? in.readInt() : 0,
+                (present & DISMISS_TEXT) != 0 ? intern(AlarmRecord.readString(in)) : null,
+                (present & DISMISS_BACKGROUND_COLOR) != 0 ? in.readInt() : 0,
+                (present & DISMISS_TEXT_COLOR) != 0 ? in.readInt() : 0,
+                (present & SNOOZE_TEXT) != 0 ? intern(AlarmRecord.readString(in)) : null,
+                (present & SNOOZE_BACKGROUND_COLOR) != 0 ? in.readInt() : 0,
+                (present & SNOOZE_TEXT_COLOR) != 0 ? in.readInt() : 0);
+    }
+
+    // Button and title texts repeat across most alarms, so share one instance of each
+    private static String intern(String value) {
+        return value != null ? value.intern() : null;
+    }
+
+    private static final class Builder {
+        private final JSONObject json;
+        int present;
+
+        Builder(JSONObject json) {
+            this.json = json;
+        }
+
+        String text(String key, int field) {
+            String value = json.optString(key, "");
+            if (value.isEmpty()) {
+                return null;
+            }
+            present |= field;
+            return intern(value);
+        }
+
+        int color(String key, int field) {
+            String value = json.optString(key, "");
+            if (value.isEmpty()) {
+                return 0;
+            }
+            try {
+                int argb = Color.parseColor(value);
+                present |= field;
+                return argb;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid color for uiOptions." + key + ": '" + value
+                        + "' (expected #RRGGBB, #AARRGGBB or a color name)");
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package me.mahermaker.alarmmanager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.HashMap;
+
+/**
+ * Hands out every wake lock the plugin takes, one per owner, and accounts for how long each was
+ * held. AlarmReceiver holds a short lock while it runs; each firing alarm then owns its own lock
+ * from delivery until its ringing screen is drawn, its sound starts or it ends, whichever is first.
+ * Held-time totals per kind are persisted so battery usage can be attributed.
+ * All locks are acquired with a timeout, so a missed release can never hold the CPU indefinitely.
+ */
+public class WakeLockManager {
+    private static final String TAG = "WakeLockManager";
+    private static final String PREFS_NAME = "me.mahermaker.alarmmanager.WakeLockManager";
+    private static final String LOCK_TAG_PREFIX = "me.mahermaker.alarmmanager:";
+
+    public static final int RECEIVER = 0; // AlarmReceiver.onReceive
+    public static final int ALARM = 1; // A firing alarm, until it is visible or audible
+    static final String[] KIND_NAMES = { "receiver", "alarm" };
+
+    private static WakeLockManager instance;
+
+    private final PowerManager powerManager;
+    private final SharedPreferences prefs;
+    private final HashMap<String, Held> held = new HashMap<>(); // owner key -> lock currently out
+    private final long[] acquisitions = new long[KIND_NAMES.length];
+    private final long[] heldMs = new long[KIND_NAMES.length];
+    private final long[] maxHeldMs = new long[KIND_NAMES.length];
+    private final long[] timeouts = new long[KIND_NAMES.length]; // Locks that ran into their timeout instead of being released
+
+    private static final class Held {
+        final int kind;
+        final PowerManager.WakeLock lock;
+        final long acquiredAt; // elapsedRealtime
+        final long timeoutMs;
+
+        Held(int kind, PowerManager.WakeLock lock, long acquiredAt, long timeoutMs) {
+            this.kind = kind;
+            this.lock = lock;
+            this.acquiredAt = acquiredAt;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    public static synchronized WakeLockManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new WakeLockManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WakeLockManager(Context context) {
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.prefs = DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            String[] parts = prefs.getString(KIND_NAMES[kind], "0,0,0,0").split(",");
+            try {
+                acquisitions[kind] = Long.parseLong(parts[0]);
+                heldMs[kind] = Long.parseLong(parts[1]);
+                maxHeldMs[kind] = Long.parseLong(parts[2]);
+                timeouts[kind] = Long.parseLong(parts[3]);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Discarding unreadable wake lock stats for " + KIND_NAMES[kind]);
+            }
+        }
+    }
+
+    private static String key(int kind, String owner) {
+        return KIND_NAMES[kind] + ":" + owner;
+    }
+
+    /**
+     * Acquires a partial wake lock for {@code owner}. If the owner already holds one it is
+     * re-acquired with the new timeout, so ownership can be extended or handed between components.
+     */
+    public synchronized void acquire(int kind, String owner, long timeoutMs) {
+        if (powerManager == null) {
+            Log.w(TAG, "PowerManager not available, cannot acquire WakeLock.");
+            return;
+        }
+        String key = key(kind, owner);
+        long now = SystemClock.elapsedRealtime();
+        Held previous = held.remove(key);
+        if (previous != null) {
+            account(previous, now);
+            if (previous.lock.isHeld()) {
+                previous.lock.release();
+            }
+        }
+        PowerManager.WakeLock lock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOCK_TAG_PREFIX + KIND_NAMES[kind]);
+        lock.setReferenceCounted(false);
+        lock.acquire(timeoutMs);
+        held.put(key, new Held(kind, lock, now, timeoutMs));
+        acquisitions[kind]++;
+        Log.d(TAG, "WakeLock acquired for " + key + " (timeout " + timeoutMs + " ms)");
+    }
+
+    /**
+     * Releases the lock held by {@code owner}, if any, and records how long it was held.
+     */
+    public synchronized void release(int kind, String owner) {
+        Held lock = held.remove(key(kind, owner));
+        if (lock == null) {
+            return;
+        }
+        account(lock, SystemClock.elapsedRealtime());
+        if (lock.lock.isHeld()) {
+            lock.lock.release();
+        }
+        persist(lock.kind);
+        Log.d(TAG, "WakeLock released for " + key(kind, owner));
+    }
+
+    public synchronized boolean isHeld(int kind, String owner) {
+        Held lock = held.get(key(kind, owner));
+        return lock != null && lock.lock.isHeld();
+    }
+
+    private void account(Held lock, long now) {
+        long duration = now - lock.acquiredAt;
+        if (!lock.lock.isHeld() || duration >= lock.timeoutMs) {
+            duration = lock.timeoutMs; // The OS released it at the timeout
+            timeouts[lock.kind]++;
+            Log.w(TAG, "WakeLock of kind " + KIND_NAMES[lock.kind] + " ran into its " + lock.timeoutMs + " ms timeout");
+        }
+        heldMs[lock.kind] += duration;
+        maxHeldMs[lock.kind] = Math.max(maxHeldMs[lock.kind], duration);
+    }
+
+    private void persist(int kind) {
+        prefs.edit().putString(KIND_NAMES[kind],
+                acquisitions[kind] + "," + heldMs[kind] + "," + maxHeldMs[kind] + "," + timeouts[kind]).apply();
+    }
+
+    /**
+     * @return per kind: acquisitions, total and max held time, locks that hit their timeout and locks held now.
+     */
+    public synchronized JSObject getStats() {
+        int[] current = new int[KIND_NAMES.length];
+        for (Held lock : held.values()) {
+            if (lock.lock.isHeld()) {
+                current[lock.kind]++;
+            }
+        }
+        JSObject stats = new JSObject();
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            JSObject entry = new JSObject();
+            entry.put("acquisitions", acquisitions[kind]);
+            entry.put("heldMs", heldMs[kind]);
+            entry.put("maxHeldMs", maxHeldMs[kind]);
+            entry.put("timeouts", timeouts[kind]);
+            entry.put("held", current[kind]);
+            stats.put(KIND_NAMES[kind], entry);
+        }
+        return stats;
+    }
+}
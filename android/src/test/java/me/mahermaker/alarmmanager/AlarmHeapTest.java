@@ -0,0 +1,85 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Ordering of {@link AlarmHeap} under offers, re-offers and removals by ID.
+ */
+public class AlarmHeapTest {
+
+    private static AlarmRecord record(String alarmId, long at) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmId;
+        record.at = at;
+        return record;
+    }
+
+    @Test
+    public void poll_returnsRecordsByTimeThenId() {
+        AlarmHeap heap = new AlarmHeap();
+        heap.offer(record("c", 300));
+        heap.offer(record("b", 100));
+        heap.offer(record("a", 100));
+        heap.offer(record("d", 200));
+        assertEquals("a", heap.poll().alarmId);
+        assertEquals("b", heap.poll().alarmId);
+        assertEquals("d", heap.poll().alarmId);
+        assertEquals("c", heap.poll().alarmId);
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void offer_replacesRecordWithSameId() {
+        AlarmHeap heap = new AlarmHeap();
+        heap.offer(record("a", 100));
+        heap.offer(record("b", 200));
+        heap.offer(record("a", 300));
+        assertEquals(2, heap.size());
+        assertEquals("b", heap.peek().alarmId);
+        assertEquals(300, heap.get("a").at);
+    }
+
+    @Test
+    public void remove_keepsHeapOrder() {
+        AlarmHeap heap = new AlarmHeap();
+        Random random = new Random(42);
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            long at = random.nextInt(10_000);
+            heap.offer(record("id" + i, at));
+            if (i % 3 == 0) {
+                assertNotNull(heap.remove("id" + i));
+            } else {
+                expected.add(at);
+            }
+        }
+        assertNull(heap.remove("missing"));
+        Collections.sort(expected);
+        List<Long> polled = new ArrayList<>();
+        while (!heap.isEmpty()) {
+            polled.add(heap.poll().at);
+        }
+        assertEquals(expected, polled);
+    }
+
+    @Test
+    public void headUntil_returnsDueRecordsInOrderWithoutRemovingThem() {
+        AlarmHeap heap = new AlarmHeap();
+        for (int i = 0; i < 50; i++) {
+            heap.offer(record("id" + i, (i * 37) % 50));
+        }
+        List<AlarmRecord> due = heap.headUntil(9);
+        assertEquals(10, due.size());
+        for (int i = 0; i < due.size(); i++) {
+            assertEquals(i, due.get(i).at);
+        }
+        assertEquals(50, heap.size());
+    }
+}
@@ -0,0 +1,133 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Time ordering, paging and the tag index of {@link AlarmIndex}.
+ */
+public class AlarmIndexTest {
+
+    private static AlarmRecord record(String alarmId, long at, String... tags) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmId;
+        record.at = at;
+        record.tags = tags.length > 0 ? tags : null;
+        return record;
+    }
+
+    private static List<String> ids(List<AlarmRecord> records) {
+        List<String> ids = new ArrayList<>();
+        for (AlarmRecord record : records) {
+            ids.add(record.alarmId);
+        }
+        return ids;
+    }
+
+    @Test
+    public void values_areOrderedByTimeThenId() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("c", 300));
+        index.put(record("b", 100));
+        index.put(record("a", 100));
+        assertEquals(List.of("a", "b", "c"), ids(index.values()));
+    }
+
+    @Test
+    public void put_movesRecordToItsNewTime() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("a", 100));
+        index.put(record("b", 200));
+        index.put(record("a", 300));
+        assertEquals(2, index.size());
+        assertEquals(List.of("b", "a"), ids(index.values()));
+        assertEquals(List.of("b"), ids(index.range(0, 250, null, null, 10)));
+    }
+
+    @Test
+    public void range_isInclusiveAndLimited() {
+        AlarmIndex index = new AlarmIndex();
+        for (int i = 0; i < 10; i++) {
+            index.put(record("id" + i, i * 100));
+        }
+        assertEquals(List.of("id2", "id3", "id4"), ids(index.range(200, 400, null, null, 10)));
+        assertEquals(List.of("id2", "id3"), ids(index.range(200, 400, null, null, 2)));
+    }
+
+    @Test
+    public void range_pagesThroughRecordsSharingATimestamp() {
+        AlarmIndex index = new AlarmIndex();
+        for (int i = 0; i < 5; i++) {
+            index.put(record("id" + i, 100));
+        }
+        index.put(record("later", 200));
+        List<AlarmRecord> first = index.range(0, 1000, null, null, 2);
+        assertEquals(List.of("id0", "id1"), ids(first));
+        AlarmRecord last = first.get(first.size() - 1);
+        List<AlarmRecord> second = index.range(0, 1000, last.at, last.alarmId, 2);
+        assertEquals(List.of("id2", "id3"), ids(second));
+        last = second.get(second.size() - 1);
+        assertEquals(List.of("id4", "later"), ids(index.range(0, 1000, last.at, last.alarmId, 10)));
+    }
+
+    @Test
+    public void remove_dropsRecordFromEveryView() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("a", 100));
+        index.put(record("b", 200));
+        assertNotNull(index.remove("a"));
+        assertNull(index.remove("a"));
+        assertFalse(index.contains("a"));
+        assertEquals(List.of("b"), ids(index.range(0, 1000, null, null, 10)));
+    }
+
+    @Test
+    public void withTag_returnsOnlyTaggedRecordsByTime() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("late", 300, "work"));
+        index.put(record("early", 100, "work", "morning"));
+        index.put(record("other", 200, "morning"));
+        index.put(record("untagged", 150));
+        assertEquals(List.of("early", "late"), ids(index.withTag("work")));
+        assertEquals(2, index.countWithTag("morning"));
+        assertEquals(0, index.countWithTag("missing"));
+        assertTrue(index.withTag("missing").isEmpty());
+    }
+
+    @Test
+    public void put_retagsReplacedRecord() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("a", 100, "work"));
+        index.put(record("a", 100, "home"));
+        assertEquals(0, index.countWithTag("work"));
+        assertEquals(List.of("a"), index.idsWithTag("home"));
+    }
+
+    @Test
+    public void remove_untagsRecord() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("a", 100, "work"));
+        index.put(record("b", 200, "work"));
+        index.remove("a");
+        assertEquals(List.of("b"), index.idsWithTag("work"));
+        index.remove("b");
+        assertEquals(0, index.countWithTag("work"));
+    }
+
+    @Test
+    public void idsWithTag_isACopy() {
+        AlarmIndex index = new AlarmIndex();
+        index.put(record("a", 100, "work"));
+        index.put(record("b", 200, "work"));
+        List<String> ids = index.idsWithTag("work");
+        Collections.sort(ids);
+        assertEquals(List.of("a", "b"), ids);
+        ids.clear(); // Callers cancel while iterating, so the index must not change under them
+        assertEquals(2, index.countWithTag("work"));
+    }
+}
@@ -0,0 +1,72 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import android.content.Intent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Request code selection in {@link AlarmManagerImplementation}, including alarms armed by 0.1.0.
+ */
+public class AlarmManagerImplementationTest {
+
+    // Records the request codes it is asked to cancel instead of calling AlarmManager
+    private static final class RecordingImplementation extends AlarmManagerImplementation {
+        final List<Integer> cancelled = new ArrayList<>();
+
+        RecordingImplementation() {
+            super(null, null);
+        }
+
+        @Override
+        boolean cancelPendingIntent(Intent intent, int requestCode) {
+            cancelled.add(requestCode);
+            return true;
+        }
+    }
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("request-codes").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void requestCodeFor_cancelsHashCodeAlarmOfUnknownId() {
+        RequestCodeTable codes = new RequestCodeTable(dir);
+        RecordingImplementation implementation = new RecordingImplementation();
+        int requestCode = implementation.requestCodeFor(null, "wake-up", codes);
+        assertEquals(List.of("wake-up".hashCode()), implementation.cancelled);
+        assertEquals(codes.get("wake-up"), requestCode);
+    }
+
+    @Test
+    public void requestCodeFor_leavesKnownIdAlone() {
+        RequestCodeTable codes = new RequestCodeTable(dir);
+        int assigned = codes.intern("wake-up");
+        RecordingImplementation implementation = new RecordingImplementation();
+        assertEquals(assigned, implementation.requestCodeFor(null, "wake-up", codes));
+        assertTrue(implementation.cancelled.isEmpty());
+    }
+}
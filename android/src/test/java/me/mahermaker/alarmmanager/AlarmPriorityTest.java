@@ -0,0 +1,76 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Validation of the {@code priority} option by {@link AlarmRecord#fromConfig(JSONObject)}.
+ */
+public class AlarmPriorityTest {
+
+    private static JSONObject config(String priority) throws JSONException {
+        JSONObject config = new JSONObject();
+        config.put("alarmId", "wake");
+        config.put("at", 1_750_000_000_000L);
+        if (priority != null) {
+            config.put("priority", priority);
+        }
+        return config;
+    }
+
+    private static void assertRejected(JSONObject config, String messagePart) {
+        try {
+            AlarmRecord.fromConfig(config);
+            fail("Expected " + config + " to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(messagePart));
+        }
+    }
+
+    @Test
+    public void standard_keepsTheExactPath() throws JSONException {
+        AlarmRecord record = AlarmRecord.fromConfig(config(AlarmRecord.PRIORITY_STANDARD));
+        assertTrue(record.exact);
+        assertFalse(record.multiplexed);
+        assertEquals(AlarmRecord.PRIORITY_STANDARD, record.priority);
+        assertNull(AlarmRecord.fromConfig(config(null)).priority);
+    }
+
+    @Test
+    public void critical_mustBeExactAndUnbatched() throws JSONException {
+        AlarmRecord record = AlarmRecord.fromConfig(config(AlarmRecord.PRIORITY_CRITICAL));
+        assertTrue(record.exact);
+        assertFalse(record.multiplexed);
+        assertRejected(config(AlarmRecord.PRIORITY_CRITICAL).put("exact", false), "must be exact");
+        assertRejected(config(AlarmRecord.PRIORITY_CRITICAL).put("multiplexed", true), "must be exact");
+        assertRejected(config(AlarmRecord.PRIORITY_CRITICAL).put("toleranceMs", 1000), "must be exact");
+    }
+
+    @Test
+    public void background_isInexactAndBatched() throws JSONException {
+        AlarmRecord record = AlarmRecord.fromConfig(config(AlarmRecord.PRIORITY_BACKGROUND));
+        assertFalse(record.exact);
+        assertTrue(record.multiplexed);
+        assertEquals(AlarmRecord.BACKGROUND_TOLERANCE_MS, record.toleranceMs);
+        assertEquals(60_000, AlarmRecord.fromConfig(config(AlarmRecord.PRIORITY_BACKGROUND).put("toleranceMs", 60_000)).toleranceMs);
+        assertRejected(config(AlarmRecord.PRIORITY_BACKGROUND).put("exact", true), "cannot be exact");
+    }
+
+    @Test
+    public void unknownPriority_isRejected() throws JSONException {
+        assertRejected(config("urgent"), "Invalid priority");
+    }
+
+    @Test
+    public void missingIdOrTime_isReportedBeforeThePriority() throws JSONException {
+        JSONObject noId = config("urgent");
+        noId.remove("alarmId");
+        assertRejected(noId, "missing alarmId or at");
+        JSONObject noTime = config(AlarmRecord.PRIORITY_CRITICAL).put("exact", false);
+        noTime.remove("at");
+        assertRejected(noTime, "missing alarmId or at");
+    }
+}
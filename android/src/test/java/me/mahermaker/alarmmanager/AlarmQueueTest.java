@@ -0,0 +1,75 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tolerance-based grouping of multiplexed alarms by {@link AlarmQueue#coalesce(AlarmHeap)}.
+ */
+public class AlarmQueueTest {
+
+    private static AlarmRecord record(String alarmId, long at, long toleranceMs) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmId;
+        record.at = at;
+        record.toleranceMs = toleranceMs;
+        record.exact = false;
+        return record;
+    }
+
+    private static AlarmHeap heap(AlarmRecord... records) {
+        AlarmHeap heap = new AlarmHeap();
+        for (AlarmRecord record : records) {
+            heap.offer(record);
+        }
+        return heap;
+    }
+
+    @Test
+    public void coalesce_emptyHeapHasNoWakeup() {
+        assertNull(AlarmQueue.coalesce(new AlarmHeap()));
+    }
+
+    @Test
+    public void coalesce_includesAlarmExactlyAtTheDeadline() {
+        AlarmQueue.Wakeup wakeup = AlarmQueue.coalesce(heap(record("a", 1000, 500), record("b", 1500, 500)));
+        assertEquals(2, wakeup.size);
+        assertEquals(1500, wakeup.at);
+        assertEquals(1500, wakeup.until); // a's deadline is still the earliest
+    }
+
+    @Test
+    public void coalesce_stopsOneMillisecondPastTheDeadline() {
+        AlarmQueue.Wakeup wakeup = AlarmQueue.coalesce(heap(record("a", 1000, 500), record("b", 1501, 500)));
+        assertEquals(1, wakeup.size);
+        assertEquals(1000, wakeup.at);
+        assertEquals(1500, wakeup.until);
+    }
+
+    @Test
+    public void coalesce_groupDeadlineShrinksToTheTightestTolerance() {
+        AlarmQueue.Wakeup wakeup = AlarmQueue.coalesce(heap(
+                record("a", 1000, 1000), record("b", 1200, 100), record("c", 1300, 1000), record("d", 1301, 1000)));
+        assertEquals(3, wakeup.size); // b's deadline at 1300 admits c but not d
+        assertEquals(1300, wakeup.at);
+        assertEquals(1300, wakeup.until);
+    }
+
+    @Test
+    public void coalesce_zeroToleranceHeadFiresAlone() {
+        AlarmQueue.Wakeup wakeup = AlarmQueue.coalesce(heap(record("a", 1000, 0), record("b", 1000, 500)));
+        assertEquals(1, wakeup.size);
+        assertEquals(1000, wakeup.at);
+        assertEquals(1000, wakeup.until);
+    }
+
+    @Test
+    public void coalesce_isExactIfAnyGroupedAlarmIs() {
+        AlarmRecord exact = record("b", 1100, 500);
+        exact.exact = true;
+        AlarmQueue.Wakeup wakeup = AlarmQueue.coalesce(heap(record("a", 1000, 500), exact));
+        assertTrue(wakeup.exact);
+        assertFalse(AlarmQueue.coalesce(heap(record("a", 1000, 500))).exact);
+    }
+}
@@ -0,0 +1,172 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Content hashing and the binary form of {@link AlarmRecord}.
+ */
+public class AlarmRecordTest {
+
+    private static AlarmRecord record() {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = "wake";
+        record.at = 1_750_000_000_000L;
+        record.firstAt = record.at;
+        record.name = "Wake up";
+        record.exact = true;
+        record.extraJson = "{\"room\":\"bedroom\"}";
+        record.uiOptionsJson = "{\"titleText\":\"Morning\"}";
+        return record;
+    }
+
+    private static AlarmRecord roundTrip(AlarmRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        record.writeTo(new DataOutputStream(bytes));
+        return AlarmRecord.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void contentHash_isEqualForEqualContent() {
+        assertEquals(record().contentHash(), record().contentHash());
+        assertNotEquals(0, record().contentHash());
+    }
+
+    @Test
+    public void contentHash_survivesTheStoreFormat() throws IOException {
+        AlarmRecord record = record();
+        assertEquals(record.contentHash(), roundTrip(record).contentHash());
+    }
+
+    @Test
+    public void contentHash_ignoresTheCurrentOccurrence() {
+        AlarmRecord record = record();
+        record.repeat = "FREQ=DAILY";
+        AlarmRecord moved = record();
+        moved.repeat = "FREQ=DAILY";
+        moved.at += 24 * 60 * 60 * 1000L;
+        moved.occurrence = 1;
+        assertEquals(record.contentHash(), moved.contentHash());
+    }
+
+    @Test
+    public void contentHash_changesWithEachField() {
+        long base = record().contentHash();
+        AlarmRecord changed = record();
+        changed.firstAt++;
+        assertNotEquals(base, changed.contentHash());
+        changed = record();
+        changed.name = "Wake up!";
+        assertNotEquals(base, changed.contentHash());
+        changed = record();
+        changed.exact = false;
+        assertNotEquals(base, changed.contentHash());
+        changed = record();
+        changed.extraJson = null;
+        assertNotEquals(base, changed.contentHash());
+        changed = record();
+        changed.uiOptionsJson = "{}";
+        assertNotEquals(base, changed.contentHash());
+        changed = record();
+        changed.multiplexed = true;
+        assertNotEquals(base, changed.contentHash());
+        changed = record();
+        changed.repeat = "FREQ=DAILY";
+        assertNotEquals(base, changed.contentHash());
+    }
+
+    @Test
+    public void contentHash_keepsAdjacentFieldsApart() {
+        AlarmRecord a = record();
+        a.name = "ab";
+        a.extraJson = "c";
+        AlarmRecord b = record();
+        b.name = "a";
+        b.extraJson = "bc";
+        assertNotEquals(a.contentHash(), b.contentHash());
+    }
+
+    // A compiled title text and background color, built from their stored form
+    private static UiOptions uiOptions() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(UiOptions.TITLE_TEXT | UiOptions.BACKGROUND_COLOR);
+        AlarmRecord.writeString(out, "Morning");
+        out.writeInt(0xFF112233);
+        return UiOptions.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void writeTo_roundTripsEveryField() throws IOException {
+        AlarmRecord record = record();
+        record.multiplexed = true;
+        record.repeat = "FREQ=WEEKLY;BYDAY=MO";
+        record.firstAt = record.at - 1000;
+        record.occurrence = 3;
+        record.toleranceMs = 60_000;
+        record.uiOptions = uiOptions();
+        record.soundUri = "content://media/internal/audio/media/12";
+        record.prepareTimeoutMs = 750;
+        record.ringTimeoutMs = 120_000;
+        record.timeoutAction = "snooze";
+        record.missedPolicy = "collapse";
+        record.priority = AlarmRecord.PRIORITY_CRITICAL;
+        record.tags = new String[] {"work", "morning"};
+        AlarmRecord read = roundTrip(record);
+        assertEquals(record.alarmId, read.alarmId);
+        assertEquals(record.at, read.at);
+        assertEquals(record.name, read.name);
+        assertEquals(record.exact, read.exact);
+        assertEquals(record.extraJson, read.extraJson);
+        assertEquals(record.uiOptionsJson, read.uiOptionsJson);
+        assertEquals(record.multiplexed, read.multiplexed);
+        assertEquals(record.repeat, read.repeat);
+        assertEquals(record.firstAt, read.firstAt);
+        assertEquals(record.occurrence, read.occurrence);
+        assertEquals(record.toleranceMs, read.toleranceMs);
+        assertEquals(record.uiOptions.present, read.uiOptions.present);
+        assertEquals("Morning", read.uiOptions.titleText);
+        assertEquals(0xFF112233, read.uiOptions.backgroundColor);
+        assertEquals(record.soundUri, read.soundUri);
+        assertEquals(record.prepareTimeoutMs, read.prepareTimeoutMs);
+        assertEquals(record.ringTimeoutMs, read.ringTimeoutMs);
+        assertEquals(record.timeoutAction, read.timeoutAction);
+        assertEquals(record.missedPolicy, read.missedPolicy);
+        assertEquals(record.priority, read.priority);
+        assertArrayEquals(record.tags, read.tags);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsUnknownVersion() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        record().writeTo(new DataOutputStream(bytes));
+        byte[] data = bytes.toByteArray();
+        data[0] = 2; // A layout this build doesn't know
+        AlarmRecord.readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void writeTo_keepsNullsAndLongStrings() throws IOException {
+        AlarmRecord record = record();
+        record.name = null;
+        record.uiOptionsJson = null;
+        StringBuilder extra = new StringBuilder("{\"blob\":\"");
+        for (int i = 0; i < 70_000; i++) {
+            extra.append('x');
+        }
+        record.extraJson = extra.append("\"}").toString(); // Past writeUTF's 64 KB limit
+        AlarmRecord read = roundTrip(record);
+        assertNull(read.name);
+        assertNull(read.uiOptionsJson);
+        assertNull(read.uiOptions);
+        assertNull(read.tags);
+        assertEquals(record.extraJson, read.extraJson);
+    }
+}
@@ -0,0 +1,118 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Log replay, compaction and torn-tail recovery of {@link AlarmStore}.
+ */
+public class AlarmStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File(Files.createTempDirectory("alarm-store").toFile(), "store");
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(dir.getParentFile());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static AlarmRecord record(String alarmId, long at) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmId;
+        record.at = at;
+        record.firstAt = at;
+        record.name = "Alarm " + alarmId;
+        return record;
+    }
+
+    private static List<String> ids(List<AlarmRecord> records) {
+        List<String> ids = new ArrayList<>();
+        for (AlarmRecord record : records) {
+            ids.add(record.alarmId);
+        }
+        return ids;
+    }
+
+    @Test
+    public void reopen_replaysPutsAndRemoves() {
+        AlarmStore store = new AlarmStore(dir);
+        store.put(record("a", 300));
+        store.putAll(List.of(record("b", 100), record("c", 200)));
+        store.put(record("a", 400)); // Replaces the first put
+        assertEquals(List.of(true, false), List.of(store.remove("b"), store.remove("missing")));
+
+        AlarmStore reopened = new AlarmStore(dir);
+        assertEquals(List.of("c", "a"), ids(reopened.getAll()));
+        assertEquals(400, reopened.get("a").at);
+        assertEquals("Alarm c", reopened.get("c").name);
+        assertFalse(new File(dir, "snapshot.bin").exists());
+    }
+
+    @Test
+    public void compaction_startsAtTheThreshold() {
+        AlarmStore store = new AlarmStore(dir);
+        for (int i = 0; i < 511; i++) {
+            store.put(record("a", i));
+        }
+        assertFalse(new File(dir, "snapshot.bin").exists());
+        store.put(record("a", 511)); // 512th log operation
+        assertTrue(new File(dir, "snapshot.bin").exists());
+        assertFalse(new File(dir, "log.bin").exists());
+
+        store.put(record("b", 1000)); // Lands in a fresh log on top of the snapshot
+        AlarmStore reopened = new AlarmStore(dir);
+        assertEquals(List.of("a", "b"), ids(reopened.getAll()));
+        assertEquals(511, reopened.get("a").at);
+    }
+
+    @Test
+    public void compaction_waitsWhileTheLogIsNoLargerThanTheStore() {
+        AlarmStore store = new AlarmStore(dir);
+        List<AlarmRecord> batch = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            batch.add(record("id" + i, i));
+        }
+        store.putAll(batch); // 600 log operations for 600 live records: nothing to fold
+        assertFalse(new File(dir, "snapshot.bin").exists());
+        assertEquals(600, new AlarmStore(dir).size());
+    }
+
+    @Test
+    public void tornLogTail_keepsCompleteEntries() throws IOException {
+        AlarmStore store = new AlarmStore(dir);
+        store.put(record("a", 100));
+        store.put(record("b", 200));
+        try (FileOutputStream log = new FileOutputStream(new File(dir, "log.bin"), true)) {
+            log.write(new byte[] {1, 1, 0, 0}); // A put cut off mid-record
+        }
+
+        AlarmStore reopened = new AlarmStore(dir);
+        assertEquals(List.of("a", "b"), ids(reopened.getAll()));
+        reopened.put(record("c", 300)); // Must not follow the garbage
+        assertEquals(List.of("a", "b", "c"), ids(new AlarmStore(dir).getAll()));
+    }
+}
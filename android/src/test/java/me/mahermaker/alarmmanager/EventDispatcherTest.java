@@ -0,0 +1,124 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Eviction policies and per-event limits of the {@link EventDispatcher} buffer.
+ */
+public class EventDispatcherTest {
+
+    // Records sent events instead of calling the bridge
+    private static final class RecordingPlugin extends ManagerPlugin {
+        final Set<String> listening = new HashSet<>();
+        final List<String> sentNames = new ArrayList<>();
+        final List<JSObject> sentData = new ArrayList<>();
+
+        @Override
+        boolean hasEventListeners(String eventName) {
+            return listening.contains(eventName);
+        }
+
+        @Override
+        void sendEvent(String eventName, JSObject data) {
+            sentNames.add(eventName);
+            sentData.add(data);
+        }
+
+        void listen(EventDispatcher dispatcher, String eventName) {
+            listening.add(eventName);
+            dispatcher.onListenerAdded(eventName);
+        }
+    }
+
+    private static JSObject[] dispatch(EventDispatcher dispatcher, String eventName, int count) {
+        JSObject[] events = new JSObject[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = new JSObject();
+            dispatcher.dispatch(eventName, events[i]);
+        }
+        return events;
+    }
+
+    private static void assertSent(RecordingPlugin plugin, JSObject... expected) {
+        assertEquals(expected.length, plugin.sentData.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(expected[i], plugin.sentData.get(i));
+        }
+    }
+
+    @Test
+    public void dispatch_sendsStraightToAListener() {
+        RecordingPlugin plugin = new RecordingPlugin();
+        plugin.listening.add("alarmFired");
+        EventDispatcher dispatcher = new EventDispatcher(plugin, 10, EventDispatcher.DROP_OLDEST, Collections.emptyMap());
+        JSObject[] fired = dispatch(dispatcher, "alarmFired", 1);
+        assertSent(plugin, fired);
+    }
+
+    @Test
+    public void dropOldest_keepsTheLatestEvents() {
+        RecordingPlugin plugin = new RecordingPlugin();
+        EventDispatcher dispatcher = new EventDispatcher(plugin, 2, EventDispatcher.DROP_OLDEST, Collections.emptyMap());
+        JSObject[] fired = dispatch(dispatcher, "alarmFired", 3);
+        assertTrue(plugin.sentData.isEmpty());
+        plugin.listen(dispatcher, "alarmFired");
+        assertSent(plugin, fired[1], fired[2]);
+    }
+
+    @Test
+    public void dropNewest_keepsTheFirstEvents() {
+        RecordingPlugin plugin = new RecordingPlugin();
+        EventDispatcher dispatcher = new EventDispatcher(plugin, 2, EventDispatcher.DROP_NEWEST, Collections.emptyMap());
+        JSObject[] fired = dispatch(dispatcher, "alarmFired", 3);
+        plugin.listen(dispatcher, "alarmFired");
+        assertSent(plugin, fired[0], fired[1]);
+    }
+
+    @Test
+    public void perTypeLimit_evictsOnlyThatType() {
+        RecordingPlugin plugin = new RecordingPlugin();
+        EventDispatcher dispatcher = new EventDispatcher(plugin, 10, EventDispatcher.DROP_OLDEST, Map.of("alarmFired", 1));
+        JSObject[] fired = dispatch(dispatcher, "alarmFired", 2);
+        JSObject[] dismissed = dispatch(dispatcher, "alarmDismissed", 2);
+        plugin.listen(dispatcher, "alarmFired");
+        assertSent(plugin, fired[1]);
+        plugin.listen(dispatcher, "alarmDismissed");
+        assertSent(plugin, fired[1], dismissed[0], dismissed[1]);
+    }
+
+    @Test
+    public void zeroLimits_retainNothingWhateverThePolicy() {
+        RecordingPlugin plugin = new RecordingPlugin();
+        EventDispatcher dispatcher = new EventDispatcher(plugin, 10, EventDispatcher.DROP_OLDEST, Map.of("alarmSnoozed", 0));
+        dispatch(dispatcher, "alarmSnoozed", 2);
+        plugin.listen(dispatcher, "alarmSnoozed");
+        assertTrue(plugin.sentData.isEmpty());
+
+        dispatcher = new EventDispatcher(plugin, 0, EventDispatcher.DROP_OLDEST, Collections.emptyMap());
+        dispatch(dispatcher, "alarmFired", 2);
+        plugin.listen(dispatcher, "alarmFired");
+        assertTrue(plugin.sentData.isEmpty());
+    }
+
+    @Test
+    public void listenerAdded_receivesOnlyItsOwnEvents() {
+        RecordingPlugin plugin = new RecordingPlugin();
+        EventDispatcher dispatcher = new EventDispatcher(plugin, 10, EventDispatcher.DROP_OLDEST, Collections.emptyMap());
+        dispatch(dispatcher, "alarmFired", 1);
+        JSObject[] dismissed = dispatch(dispatcher, "alarmDismissed", 1);
+        plugin.listen(dispatcher, "alarmDismissed");
+        assertSent(plugin, dismissed);
+        assertEquals(List.of("alarmDismissed"), plugin.sentNames);
+    }
+}
@@ -0,0 +1,160 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sequence numbers, acknowledgement, bounded eviction and persistence of {@link EventOutbox}.
+ */
+public class EventOutboxTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File(Files.createTempDirectory("event-outbox").toFile(), "outbox");
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(dir.getParentFile());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    // Writes on the calling thread, so the files are up to date when each call returns
+    private EventOutbox open() {
+        return new EventOutbox(dir, Runnable::run);
+    }
+
+    private static List<Long> seqs(List<EventOutbox.Event> events) {
+        List<Long> seqs = new ArrayList<>();
+        for (EventOutbox.Event event : events) {
+            seqs.add(event.seq);
+        }
+        return seqs;
+    }
+
+    @Test
+    public void publish_numbersEventsInOrder() {
+        EventOutbox outbox = open();
+        outbox.publish("alarmFired", "{}");
+        outbox.publish("alarmDismissed", "{}");
+        outbox.publish("alarmSnoozed", "{}");
+        assertEquals(List.of(1L, 2L, 3L), seqs(outbox.pendingEvents(0, 10)));
+        assertEquals(List.of(2L, 3L), seqs(outbox.pendingEvents(1, 10)));
+        assertEquals(List.of(1L, 2L), seqs(outbox.pendingEvents(0, 2)));
+    }
+
+    @Test
+    public void ack_removesEverythingUpToTheSeq() {
+        EventOutbox outbox = open();
+        for (int i = 0; i < 5; i++) {
+            outbox.publish("alarmFired", "{}");
+        }
+        assertEquals(3, outbox.ack(3));
+        assertEquals(List.of(4L, 5L), seqs(outbox.pendingEvents(0, 10)));
+        assertEquals(0, outbox.ack(2)); // Behind the cursor
+        assertEquals(2, outbox.ack(100)); // Clamped to the last published event
+        outbox.publish("alarmFired", "{}");
+        assertEquals(List.of(6L), seqs(outbox.pendingEvents(0, 10)));
+    }
+
+    @Test
+    public void publish_evictsTheOldestPastTheBound() {
+        EventOutbox outbox = open();
+        for (int i = 0; i < EventOutbox.MAX_EVENTS + 3; i++) {
+            outbox.publish("alarmFired", "{}");
+        }
+        List<EventOutbox.Event> events = outbox.pendingEvents(0, Integer.MAX_VALUE);
+        assertEquals(EventOutbox.MAX_EVENTS, events.size());
+        assertEquals(4, events.get(0).seq);
+        assertEquals(3, outbox.dropped());
+    }
+
+    @Test
+    public void reopen_replaysPublishDeliveryAndAck() {
+        EventOutbox outbox = open();
+        outbox.publish("alarmFired", "{\"alarmId\":\"a\"}");
+        outbox.publish("alarmFired", "{\"alarmId\":\"b\"}");
+        outbox.publish("alarmDismissed", "{\"alarmId\":\"a\"}");
+        outbox.markDelivered(outbox.pendingEvents(1, 1));
+        outbox.ack(1);
+
+        List<EventOutbox.Event> events = open().pendingEvents(0, 10);
+        assertEquals(List.of(2L, 3L), seqs(events));
+        assertTrue(events.get(0).delivered);
+        assertFalse(events.get(1).delivered);
+        assertEquals("alarmDismissed", events.get(1).name);
+        assertEquals("{\"alarmId\":\"a\"}", events.get(1).dataJson);
+    }
+
+    @Test
+    public void reopen_continuesTheSequence() {
+        EventOutbox outbox = open();
+        outbox.publish("alarmFired", "{}");
+        outbox.publish("alarmFired", "{}");
+        outbox.ack(2);
+        EventOutbox reopened = open();
+        reopened.publish("alarmFired", "{}");
+        assertEquals(List.of(3L), seqs(reopened.pendingEvents(0, 10)));
+    }
+
+    @Test
+    public void compaction_foldsTheLogIntoASnapshot() {
+        EventOutbox outbox = open();
+        int published = 1100; // Past COMPACT_THRESHOLD log entries
+        for (int i = 0; i < published; i++) {
+            outbox.publish("alarmFired", "{\"i\":" + i + "}");
+        }
+        assertTrue(new File(dir, "snapshot.bin").exists());
+
+        EventOutbox reopened = open();
+        List<EventOutbox.Event> events = reopened.pendingEvents(0, Integer.MAX_VALUE);
+        assertEquals(EventOutbox.MAX_EVENTS, events.size());
+        assertEquals(published, events.get(events.size() - 1).seq);
+        assertEquals(published - EventOutbox.MAX_EVENTS, reopened.dropped());
+    }
+
+    @Test
+    public void tornLogTail_keepsCompleteEntries() throws IOException {
+        EventOutbox outbox = open();
+        outbox.publish("alarmFired", "{}");
+        outbox.publish("alarmSnoozed", "{}");
+        try (FileOutputStream log = new FileOutputStream(new File(dir, "log.bin"), true)) {
+            log.write(new byte[] {1, 0, 0}); // A publish cut off mid-write
+        }
+
+        EventOutbox reopened = open();
+        assertEquals(List.of(1L, 2L), seqs(reopened.pendingEvents(0, 10)));
+        reopened.publish("alarmDismissed", "{}");
+        assertEquals(List.of(1L, 2L, 3L), seqs(open().pendingEvents(0, 10)));
+    }
+
+    @Test
+    public void markDelivered_ofAnEmptyBatchIsHarmless() {
+        EventOutbox outbox = open();
+        outbox.publish("alarmFired", "{}");
+        outbox.markDelivered(Collections.emptyList());
+        assertFalse(open().pendingEvents(0, 10).get(0).delivered);
+    }
+}
@@ -0,0 +1,105 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Lateness threshold and the fire, collapse and skip policies of {@link MissedAlarms}.
+ */
+public class MissedAlarmsTest {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final long NOW = 1_750_000_000_000L;
+
+    private TimeZone previous;
+
+    @Before
+    public void setUp() {
+        previous = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(previous);
+    }
+
+    private static AlarmRecord record(String alarmId, long at, String missedPolicy) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmId;
+        record.at = at;
+        record.firstAt = at;
+        record.missedPolicy = missedPolicy;
+        return record;
+    }
+
+    private static List<String> ids(List<AlarmRecord> records) {
+        List<String> ids = new ArrayList<>();
+        for (AlarmRecord record : records) {
+            ids.add(record.alarmId);
+        }
+        return ids;
+    }
+
+    @Test
+    public void isLate_startsPastTheGraceAndTolerance() {
+        AlarmRecord record = record("a", NOW, null);
+        assertFalse(MissedAlarms.isLate(record, NOW, NOW + MissedAlarms.MISSED_AFTER_MS));
+        assertTrue(MissedAlarms.isLate(record, NOW, NOW + MissedAlarms.MISSED_AFTER_MS + 1));
+        record.toleranceMs = 60_000;
+        assertFalse(MissedAlarms.isLate(record, NOW, NOW + MissedAlarms.MISSED_AFTER_MS + 60_000));
+    }
+
+    @Test
+    public void plan_splitsByPolicyAndFiresByDefault() {
+        long at = NOW - DAY_MS;
+        MissedAlarms.Plan plan = MissedAlarms.plan(List.of(
+                record("default", at, null),
+                record("fire", at, AlarmRecord.MISSED_FIRE),
+                record("collapse", at, AlarmRecord.MISSED_COLLAPSE),
+                record("skip", at, AlarmRecord.MISSED_SKIP)), NOW);
+        assertEquals(List.of("default", "fire"), ids(plan.fire));
+        assertEquals(List.of("collapse"), ids(plan.collapse));
+        assertEquals(List.of("skip"), ids(plan.skip));
+    }
+
+    @Test
+    public void plan_removesOneShotAlarmsWhateverThePolicy() {
+        long at = NOW - DAY_MS;
+        MissedAlarms.Plan plan = MissedAlarms.plan(List.of(
+                record("fire", at, AlarmRecord.MISSED_FIRE),
+                record("skip", at, AlarmRecord.MISSED_SKIP)), NOW);
+        assertEquals(List.of("fire", "skip"), plan.finished);
+        assertTrue(plan.next.isEmpty());
+    }
+
+    @Test
+    public void plan_movesRecurringAlarmsPastEveryMissedOccurrence() {
+        AlarmRecord daily = record("daily", NOW - 3 * DAY_MS, AlarmRecord.MISSED_SKIP);
+        daily.repeat = "FREQ=DAILY";
+        MissedAlarms.Plan plan = MissedAlarms.plan(List.of(daily), NOW);
+        assertEquals(List.of("daily"), ids(plan.skip));
+        assertTrue(plan.finished.isEmpty());
+        assertEquals(1, plan.next.size());
+        AlarmRecord next = plan.next.get(0);
+        assertEquals(NOW + DAY_MS, next.at); // Not one of the three days that passed
+        assertEquals(daily.firstAt, next.firstAt);
+    }
+
+    @Test
+    public void plan_finishesExhaustedRecurringAlarms() {
+        AlarmRecord twice = record("twice", NOW - 3 * DAY_MS, AlarmRecord.MISSED_COLLAPSE);
+        twice.repeat = "FREQ=DAILY;COUNT=2";
+        twice.occurrence = 1; // The second and last occurrence is the one missed
+        MissedAlarms.Plan plan = MissedAlarms.plan(List.of(twice), NOW);
+        assertEquals(List.of("twice"), ids(plan.collapse));
+        assertEquals(List.of("twice"), plan.finished);
+    }
+}
@@ -0,0 +1,147 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Next-occurrence computation of {@link Recurrence}, evaluated in a fixed zone with DST.
+ */
+public class RecurrenceTest {
+
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+    private TimeZone previous;
+
+    @Before
+    public void setUp() {
+        previous = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(ZONE));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(previous);
+    }
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(LocalDateTime.of(year, month, day, hour, minute), ZONE).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void daily_keepsWallClockTimeAcrossSpringForward() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY");
+        long firstAt = at(2025, 3, 8, 7, 0);
+        long next = rule.nextAfter(firstAt, firstAt, 1);
+        assertEquals(at(2025, 3, 9, 7, 0), next);
+        assertEquals(23 * 60 * 60 * 1000L, next - firstAt);
+    }
+
+    @Test
+    public void daily_keepsWallClockTimeAcrossFallBack() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY");
+        long firstAt = at(2025, 11, 1, 7, 0);
+        long next = rule.nextAfter(firstAt, firstAt, 1);
+        assertEquals(at(2025, 11, 2, 7, 0), next);
+        assertEquals(25 * 60 * 60 * 1000L, next - firstAt);
+    }
+
+    @Test
+    public void daily_timeInSpringForwardGapMovesLikeZonedDateTime() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY");
+        long firstAt = at(2025, 3, 8, 2, 30);
+        assertEquals(at(2025, 3, 9, 3, 30), rule.nextAfter(firstAt, firstAt, 1));
+        assertEquals(at(2025, 3, 10, 2, 30), rule.nextAfter(firstAt, at(2025, 3, 9, 3, 30), 2));
+    }
+
+    @Test
+    public void daily_matchesZoneRulesForAYearOfOccurrences() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY;BYHOUR=6;BYMINUTE=45");
+        long firstAt = at(2025, 1, 1, 6, 45);
+        long current = firstAt;
+        LocalDateTime expected = LocalDateTime.of(2025, 1, 1, 6, 45);
+        for (int i = 1; i <= 366; i++) {
+            current = rule.nextAfter(firstAt, current, i);
+            expected = expected.plusDays(1);
+            assertEquals("occurrence " + i, ZonedDateTime.of(expected, ZONE).toInstant().toEpochMilli(), current);
+        }
+    }
+
+    @Test
+    public void monthly_skipsMonthsWithoutTheAnchorDay() {
+        Recurrence rule = Recurrence.parse("FREQ=MONTHLY");
+        long firstAt = at(2025, 1, 31, 8, 0);
+        long second = rule.nextAfter(firstAt, firstAt, 1);
+        assertEquals(at(2025, 3, 31, 8, 0), second);
+        assertEquals(at(2025, 5, 31, 8, 0), rule.nextAfter(firstAt, second, 2));
+    }
+
+    @Test
+    public void monthly_byMonthDayOnlyMatchesExistingDays() {
+        Recurrence rule = Recurrence.parse("FREQ=MONTHLY;BYMONTHDAY=30,31");
+        long firstAt = at(2025, 1, 31, 8, 0);
+        assertEquals(at(2025, 3, 30, 8, 0), rule.nextAfter(firstAt, firstAt, 1));
+        long leap = at(2024, 1, 31, 8, 0);
+        assertEquals(at(2024, 3, 30, 8, 0), rule.nextAfter(leap, leap, 1));
+    }
+
+    @Test
+    public void weekly_byDayWithInterval() {
+        Recurrence rule = Recurrence.parse("FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,FR");
+        long firstAt = at(2025, 6, 2, 9, 0); // A Monday
+        long friday = rule.nextAfter(firstAt, firstAt, 1);
+        assertEquals(at(2025, 6, 6, 9, 0), friday);
+        assertEquals(at(2025, 6, 16, 9, 0), rule.nextAfter(firstAt, friday, 2));
+    }
+
+    @Test
+    public void monthly_intervalLongerThanTheScanJumpsToTheNextPeriod() {
+        Recurrence rule = Recurrence.parse("FREQ=MONTHLY;INTERVAL=200");
+        long firstAt = at(2025, 1, 15, 7, 0);
+        assertEquals(at(2041, 9, 15, 7, 0), rule.nextAfter(firstAt, firstAt, 1));
+    }
+
+    @Test
+    public void weekly_intervalLongerThanTheScanJumpsToTheNextPeriod() {
+        Recurrence rule = Recurrence.parse("FREQ=WEEKLY;INTERVAL=600;BYDAY=MO,FR");
+        long firstAt = at(2025, 1, 6, 7, 0); // A Monday
+        long friday = at(2025, 1, 10, 7, 0);
+        assertEquals(friday, rule.nextAfter(firstAt, firstAt, 1));
+        assertEquals(at(2036, 7, 7, 7, 0), rule.nextAfter(firstAt, friday, 2));
+    }
+
+    @Test
+    public void daily_largeIntervalFromALateStart() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY;INTERVAL=1000");
+        long firstAt = at(2025, 1, 1, 7, 0);
+        assertEquals(at(2030, 6, 24, 7, 0), rule.nextAfter(firstAt, at(2028, 1, 1, 0, 0), 2));
+    }
+
+    @Test
+    public void count_exhaustsTheRule() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY;COUNT=3");
+        long firstAt = at(2025, 1, 1, 7, 0);
+        assertEquals(at(2025, 1, 3, 7, 0), rule.nextAfter(firstAt, at(2025, 1, 2, 7, 0), 2));
+        assertEquals(-1, rule.nextAfter(firstAt, at(2025, 1, 3, 7, 0), 3));
+    }
+
+    @Test
+    public void until_isInclusive() {
+        Recurrence rule = Recurrence.parse("FREQ=DAILY;UNTIL=20250103T070000");
+        long firstAt = at(2025, 1, 1, 7, 0);
+        assertEquals(at(2025, 1, 3, 7, 0), rule.nextAfter(firstAt, at(2025, 1, 2, 7, 0), 2));
+        assertEquals(-1, rule.nextAfter(firstAt, at(2025, 1, 3, 7, 0), 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsByDayOutsideWeekly() {
+        Recurrence.parse("FREQ=DAILY;BYDAY=MO");
+    }
+}
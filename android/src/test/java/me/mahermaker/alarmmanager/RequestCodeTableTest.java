@@ -0,0 +1,140 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Open-addressing map, free-list reuse and persistence of {@link RequestCodeTable}.
+ */
+public class RequestCodeTableTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File(Files.createTempDirectory("request-codes").toFile(), "table");
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(dir.getParentFile());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void intern_givesEachIdItsOwnStableCode() {
+        RequestCodeTable table = new RequestCodeTable(dir);
+        int a = table.intern("a");
+        int b = table.intern("b");
+        assertNotEquals(a, b);
+        assertTrue(a >= RequestCodeTable.CODE_BASE && b >= RequestCodeTable.CODE_BASE);
+        assertEquals(a, table.intern("a"));
+        assertEquals(b, table.get("b"));
+        assertEquals(RequestCodeTable.NO_CODE, table.get("c"));
+    }
+
+    @Test
+    public void free_returnsTheSlotForReuse() {
+        RequestCodeTable table = new RequestCodeTable(dir);
+        table.intern("a");
+        int b = table.intern("b");
+        table.intern("c");
+        table.free("b");
+        table.free("b"); // Freeing twice must not hand the slot out twice
+        assertEquals(RequestCodeTable.NO_CODE, table.get("b"));
+        assertEquals(b, table.intern("d"));
+        assertNotEquals(b, table.intern("e"));
+    }
+
+    @Test
+    public void free_keepsEveryOtherIdFindable() {
+        RequestCodeTable table = new RequestCodeTable(dir);
+        Map<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String alarmId = "alarm-" + i;
+            codes.put(alarmId, table.intern(alarmId));
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            table.free("alarm-" + i);
+        }
+        for (int i = 0; i < 5000; i++) {
+            String alarmId = "alarm-" + i;
+            int expected = i % 2 == 0 ? RequestCodeTable.NO_CODE : codes.get(alarmId);
+            assertEquals(alarmId, expected, table.get(alarmId));
+        }
+    }
+
+    @Test
+    public void intern_reusesFreedSlotsBeforeGrowing() {
+        RequestCodeTable table = new RequestCodeTable(dir);
+        Set<Integer> freed = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            table.intern("old-" + i);
+        }
+        for (int i = 0; i < 100; i += 4) {
+            freed.add(table.get("old-" + i));
+            table.free("old-" + i);
+        }
+        Set<Integer> reused = new HashSet<>();
+        for (int i = 0; i < freed.size(); i++) {
+            reused.add(table.intern("new-" + i));
+        }
+        assertEquals(freed, reused);
+    }
+
+    @Test
+    public void assignments_surviveReopening() {
+        RequestCodeTable table = new RequestCodeTable(dir);
+        int a = table.intern("a");
+        int b = table.intern("b");
+        int c = table.intern("c");
+        table.free("b");
+        table.flush();
+
+        RequestCodeTable reopened = new RequestCodeTable(dir);
+        assertEquals(a, reopened.get("a"));
+        assertEquals(RequestCodeTable.NO_CODE, reopened.get("b"));
+        assertEquals(c, reopened.get("c"));
+        assertEquals(b, reopened.intern("d"));
+    }
+
+    @Test
+    public void assignments_surviveCompaction() {
+        RequestCodeTable table = new RequestCodeTable(dir);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 500; i++) {
+                table.intern("churn-" + i);
+            }
+            for (int i = 0; i < 500; i++) {
+                table.free("churn-" + i);
+            }
+            table.flush();
+        }
+        int kept = table.intern("kept");
+        table.flush();
+
+        RequestCodeTable reopened = new RequestCodeTable(dir);
+        assertEquals(kept, reopened.get("kept"));
+        assertEquals(RequestCodeTable.NO_CODE, reopened.get("churn-0"));
+    }
+}
@@ -0,0 +1,175 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Last-operation-wins coalescing of set and cancel runs in {@link SchedulingExecutor}.
+ */
+public class SchedulingExecutorTest {
+
+    // Records what reaches the schedule instead of calling AlarmManager
+    private static final class RecordingExecutor extends SchedulingExecutor {
+        final Set<String> stored = new HashSet<>();
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingExecutor() {
+            super(null);
+        }
+
+        @Override
+        boolean canScheduleExact() {
+            return true;
+        }
+
+        @Override
+        boolean isStored(String alarmId) {
+            return stored.contains(alarmId);
+        }
+
+        @Override
+        boolean[] cancelAlarms(List<String> alarmIds) {
+            calls.add("cancel " + alarmIds);
+            boolean[] results = new boolean[alarmIds.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = stored.remove(alarmIds.get(i));
+            }
+            return results;
+        }
+
+        @Override
+        boolean[] setAlarms(List<AlarmRecord> records) {
+            List<String> described = new ArrayList<>();
+            for (AlarmRecord record : records) {
+                described.add(record.alarmId + "@" + record.at);
+                stored.add(record.alarmId);
+            }
+            calls.add("set " + described);
+            boolean[] results = new boolean[records.size()];
+            Arrays.fill(results, true);
+            return results;
+        }
+    }
+
+    // Collects the callback results of one submitted command
+    private static final class Results implements SchedulingExecutor.Callback<boolean[]> {
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean[] value;
+
+        @Override
+        public void done(boolean[] result) {
+            value = result;
+            done.countDown();
+        }
+
+        boolean[] await() throws InterruptedException {
+            assertTrue("callback not called", done.await(5, TimeUnit.SECONDS));
+            return value;
+        }
+    }
+
+    private static AlarmRecord record(String alarmId, long at) {
+        AlarmRecord record = new AlarmRecord();
+        record.alarmId = alarmId;
+        record.at = at;
+        record.firstAt = at;
+        return record;
+    }
+
+    // Holds the executor thread so the commands submitted meanwhile are drained as one run
+    private static CountDownLatch hold(SchedulingExecutor executor) {
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.submitTask(() -> {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return gate;
+    }
+
+    @Test
+    public void setThenCancelOfNewAlarm_makesNoCall() throws InterruptedException {
+        RecordingExecutor executor = new RecordingExecutor();
+        CountDownLatch gate = hold(executor);
+        Results set = new Results();
+        Results cancel = new Results();
+        executor.submitSet(Collections.singletonList(record("a", 100)), set);
+        executor.submitCancel(Collections.singletonList("a"), cancel);
+        gate.countDown();
+
+        assertArrayEquals(new boolean[] { true }, set.await());
+        assertArrayEquals(new boolean[] { true }, cancel.await());
+        assertTrue(executor.calls.isEmpty());
+    }
+
+    @Test
+    public void repeatedSets_onlyApplyTheLast() throws InterruptedException {
+        RecordingExecutor executor = new RecordingExecutor();
+        CountDownLatch gate = hold(executor);
+        Results first = new Results();
+        Results second = new Results();
+        executor.submitSet(Arrays.asList(record("a", 100), record("b", 100)), first);
+        executor.submitSet(Collections.singletonList(record("a", 200)), second);
+        gate.countDown();
+
+        assertArrayEquals(new boolean[] { true, true }, first.await());
+        assertArrayEquals(new boolean[] { true }, second.await());
+        assertEquals(Collections.singletonList("set [b@100, a@200]"), executor.calls);
+    }
+
+    @Test
+    public void cancelThenSetOfStoredAlarm_onlySets() throws InterruptedException {
+        RecordingExecutor executor = new RecordingExecutor();
+        executor.stored.add("a");
+        CountDownLatch gate = hold(executor);
+        Results cancel = new Results();
+        Results set = new Results();
+        executor.submitCancel(Collections.singletonList("a"), cancel);
+        executor.submitSet(Collections.singletonList(record("a", 300)), set);
+        gate.countDown();
+
+        assertArrayEquals(new boolean[] { true }, cancel.await());
+        assertArrayEquals(new boolean[] { true }, set.await());
+        assertEquals(Collections.singletonList("set [a@300]"), executor.calls);
+    }
+
+    @Test
+    public void cancelOfUnknownAlarm_reachesTheSchedule() throws InterruptedException {
+        RecordingExecutor executor = new RecordingExecutor();
+        Results cancel = new Results();
+        executor.submitCancel(Collections.singletonList("missing"), cancel);
+
+        assertArrayEquals(new boolean[] { false }, cancel.await());
+        assertEquals(Collections.singletonList("cancel [missing]"), executor.calls);
+    }
+
+    @Test
+    public void tasks_splitRunsAndSeePrecedingCalls() throws InterruptedException {
+        RecordingExecutor executor = new RecordingExecutor();
+        CountDownLatch gate = hold(executor);
+        Results set = new Results();
+        Results cancel = new Results();
+        List<String> seen = new ArrayList<>();
+        executor.submitSet(Collections.singletonList(record("a", 100)), set);
+        executor.submitTask(() -> seen.addAll(executor.calls));
+        executor.submitCancel(Collections.singletonList("a"), cancel);
+        gate.countDown();
+
+        assertArrayEquals(new boolean[] { true }, set.await());
+        assertArrayEquals(new boolean[] { true }, cancel.await());
+        assertEquals(Collections.singletonList("set [a@100]"), seen);
+        assertEquals(Arrays.asList("set [a@100]", "cancel [a]"), executor.calls);
+    }
+}
@@ -0,0 +1,54 @@
+package me.mahermaker.alarmmanager;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * The built-in last-resort tone of {@link SoundCache}.
+ */
+public class SoundCacheTest {
+
+    private static short sample(SoundCache.Pcm pcm, int frame) {
+        return (short) ((pcm.data[2 * frame] & 0xFF) | (pcm.data[2 * frame + 1] << 8));
+    }
+
+    private static boolean silent(SoundCache.Pcm pcm, int fromFrame, int toFrame) {
+        for (int frame = fromFrame; frame < toFrame; frame++) {
+            if (sample(pcm, frame) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void builtinTone_isTwoBeepsAndAPause() {
+        SoundCache.Pcm tone = SoundCache.builtinTone();
+        int rate = tone.sampleRate;
+        int beep = rate / 4;
+        assertEquals(1, tone.channelCount);
+        assertEquals(rate * 6 / 5, tone.frameCount());
+        assertFalse(silent(tone, 0, beep));
+        assertTrue(silent(tone, beep, 2 * beep));
+        assertFalse(silent(tone, 2 * beep, 3 * beep));
+        assertTrue(silent(tone, 3 * beep, tone.frameCount()));
+    }
+
+    @Test
+    public void builtinTone_rampsInWithoutAClick() {
+        SoundCache.Pcm tone = SoundCache.builtinTone();
+        assertEquals(0, sample(tone, 0));
+        int peak = 0;
+        for (int frame = 0; frame < tone.sampleRate / 4; frame++) {
+            peak = Math.max(peak, Math.abs(sample(tone, frame)));
+        }
+        assertTrue(Math.abs(sample(tone, 1)) < peak / 10);
+        assertTrue(peak <= Short.MAX_VALUE * 0.8 + 1);
+    }
+
+    @Test
+    public void builtinTone_isGeneratedOnce() {
+        assertSame(SoundCache.builtinTone(), SoundCache.builtinTone());
+    }
+}
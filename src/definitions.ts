@@ -10,6 +10,8 @@ export interface JSObject {
 /**
  * Defines the configurable UI elements for the alarm ringing screen.
  * All properties are optional. If not provided, system or XML defaults will be used.
+ * Colors accept `#RRGGBB`, `#AARRGGBB` or an Android color name. They are validated when the
+ * alarm is set, and an invalid color rejects the call.
  */
 export interface UiOptions {
   backgroundColor?: string;         // e.g., '#FF0000' for red
@@ -54,6 +56,75 @@ export interface AlarmConfig {
   // sound?: string;    // Sound will be handled by the activity/page that opens
   extra?: JSObject;     // Optional extra data to pass to the alarm receiver, accessible in AlarmReceiver/Activity
   uiOptions?: UiOptions;  // Optional UI customization for the ringing screen
+  /**
+   * Default false. When true, the alarm is kept in the plugin's in-process queue and only the
+   * earliest queued alarm is registered with the OS. Use this to go past the per-app limit of
+   * roughly 500 outstanding system alarms.
+   */
+  multiplexed?: boolean;
+  /**
+   * Makes the alarm recurring. Accepts a subset of the iCalendar RRULE syntax:
+   * `FREQ` (`DAILY`, `WEEKLY` or `MONTHLY`), `INTERVAL`, `BYDAY` (weekly), `BYMONTHDAY` (monthly),
+   * `BYHOUR`, `BYMINUTE`, `COUNT` and `UNTIL`, e.g. `FREQ=WEEKLY;BYDAY=MO,WE,FR;BYHOUR=7;BYMINUTE=30`.
+   * Omitted parts default to the matching field of `at`, which anchors the rule. Occurrences are
+   * evaluated in the device time zone and only the next one is scheduled at any time.
+   */
+  repeat?: string;
+  /**
+   * How many milliseconds late the alarm may fire. Alarms whose tolerances overlap are delivered
+   * together by a single wakeup. On Android 12+ an inexact alarm cannot start the ringing
+   * service from the background and is shown as a notification instead.
+   * Setting a tolerance implies `multiplexed: true`. Default 0.
+   */
+  toleranceMs?: number;
+  /**
+   * Sound to ring with, as a `content://`, `file://` or `android.resource://` URI. Defaults to the
+   * device's alarm sound. The sound is decoded and cached when the alarm is set, so ringing does
+   * not wait on the ringtone provider.
+   */
+  soundUri?: string;
+  /**
+   * How long the player may take to prepare a sound that is not cached yet before ringing falls
+   * back to the next sound: `soundUri`, then the system default alarm, then a built-in tone.
+   * Default 500.
+   */
+  prepareTimeoutMs?: number;
+  /**
+   * How long the alarm may ring unattended before `timeoutAction` is applied. Default 0: rings
+   * until it is dismissed or snoozed.
+   */
+  ringTimeoutMs?: number;
+  /**
+   * What happens when `ringTimeoutMs` elapses. Default `'dismiss'`.
+   */
+  timeoutAction?: 'dismiss' | 'snooze';
+  /**
+   * What happens when the alarm's time passed without it ringing (device off, clock changed,
+   * delivery held back by Doze): `'fire'` rings it as soon as that is noticed, `'collapse'` folds
+   * it into one "You missed N alarms" notification, `'skip'` drops it. Recurring alarms move on to
+   * their next occurrence in every case. Reported through the `alarmsMissed` event. Default `'fire'`.
+   * @platform android
+   */
+  missedPolicy?: 'fire' | 'collapse' | 'skip';
+  /**
+   * Delivery class. `'critical'` alarms are armed with `setAlarmClock`: they fire on time even in
+   * Doze and show as the device's next alarm; they must be exact and cannot be multiplexed.
+   * `'standard'` alarms use exact (or inexact) while-idle alarms as before. `'background'` alarms
+   * are inexact and batched into a shared while-idle wakeup (`toleranceMs` defaults to 15 minutes).
+   * On Android 12+ inexact alarms may not start the ringing service from the background, so they
+   * are usually delivered as a notification.
+   * Each class also has its own ringing budget: a background alarm holds its wake lock for at most
+   * one minute and only one rings at a time, further ones are posted as silent notifications.
+   * Default `'standard'`.
+   * @platform android
+   */
+  priority?: 'critical' | 'standard' | 'background';
+  /**
+   * Groups the alarm belongs to (a user, a shift, a reminder list), for `cancelByTag`, `getByTag`
+   * and `countByTag`. Up to 16 non-empty tags; duplicates are ignored.
+   * @platform android
+   */
+  tags?: string[];
 }
 
 /**
@@ -68,17 +139,362 @@ export interface AlarmEventData {
    * The optional name of the alarm, as provided in AlarmConfig.
    */
   name?: string;
+  /**
+   * Present on `alarmFired`: how long each stage of the fire path took, measured from the moment
+   * the OS delivered the alarm.
+   */
+  latency?: FireLatency;
+  /**
+   * Present (true) on `alarmDismissed` and `alarmSnoozed` when the alarm was ended by its
+   * `ringTimeoutMs` rather than by the user.
+   */
+  timedOut?: boolean;
+  /**
+   * Sequence number of the event in the plugin's event outbox. Pass the highest one processed to
+   * `ackEvents` so it is not kept or replayed again.
+   */
+  seq?: number;
   // Future: could add eventType: 'alarmFired' | 'alarmDismissed' | 'alarmSnoozed';
 }
 
+/**
+ * Milliseconds from the OS delivering an alarm until each stage was reached. A stage is missing
+ * if it did not happen for this alarm (e.g. no sound could be played).
+ */
+export interface FireLatency {
+  serviceStartedMs?: number;
+  foregroundMs?: number;
+  activityCreatedMs?: number;
+  firstFrameMs?: number;
+  soundPreparedMs?: number;
+  soundStartedMs?: number;
+  /**
+   * Which sound played: the pre-decoded cache, `soundUri`, the system default alarm, the built-in
+   * tone, or none if every fallback failed.
+   */
+  soundSource?: SoundSource;
+}
+
+export type SoundSource = 'cached' | 'configured' | 'systemDefault' | 'builtinTone' | 'none';
+
+/**
+ * Aggregated delays for one fire-path stage. Percentiles come from power-of-two buckets and are
+ * reported as the upper bound of the bucket they fall in.
+ */
+export interface LatencyHistogram {
+  count: number;
+  meanMs: number;
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  maxMs: number;
+}
+
+/**
+ * Fire-path latency histograms, one per stage, accumulated over every alarm that has fired.
+ */
+export interface FireLatencyStats {
+  serviceStarted: LatencyHistogram;
+  foreground: LatencyHistogram;
+  activityCreated: LatencyHistogram;
+  firstFrame: LatencyHistogram;
+  soundPrepared: LatencyHistogram;
+  soundStarted: LatencyHistogram;
+  /**
+   * Time to sound for each sound source; for `none`, the time until every fallback had failed.
+   */
+  soundSources: Record<SoundSource, LatencyHistogram>;
+}
+
+/**
+ * Outcome for a single alarm within a `setMany` or `cancelMany` call.
+ */
+export interface BatchItemResult {
+  alarmId: string;
+  success: boolean;
+  /**
+   * Reason for the failure, present only when `success` is false.
+   */
+  error?: string;
+}
+
+/**
+ * Result of a batch call. `results` is in the same order as the input array.
+ */
+export interface BatchResult {
+  results: BatchItemResult[];
+  succeeded: number;
+  failed: number;
+}
+
+/**
+ * Options for `getBetween`.
+ */
+export interface GetBetweenOptions {
+  /**
+   * Start of the range, inclusive (milliseconds since epoch).
+   */
+  from: number;
+  /**
+   * End of the range, inclusive (milliseconds since epoch).
+   */
+  to: number;
+  /**
+   * Maximum number of alarms to return. Defaults to 100, capped at 1000.
+   */
+  limit?: number;
+  /**
+   * `nextCursor` from the previous page, to continue where it left off.
+   */
+  cursor?: string;
+}
+
+/**
+ * A page of alarms returned by `getBetween`.
+ */
+export interface AlarmPage {
+  /**
+   * Alarms ordered by `at`.
+   */
+  alarms: AlarmConfig[];
+  /**
+   * Present when more alarms may follow; pass it back as `cursor` to fetch the next page.
+   */
+  nextCursor?: string;
+}
+
+/**
+ * An event kept in the outbox until acknowledged.
+ */
+export interface OutboxEvent {
+  seq: number;
+  /**
+   * Event name, e.g. `alarmFired`.
+   */
+  event: string;
+  /**
+   * When the event was raised (milliseconds since epoch).
+   */
+  timestamp: number;
+  data: AlarmEventData;
+}
+
+export interface PendingEventsResult {
+  /**
+   * Unacknowledged events, oldest first.
+   */
+  events: OutboxEvent[];
+  /**
+   * Highest sequence number acknowledged so far.
+   */
+  ackedSeq: number;
+  /**
+   * Events dropped unacknowledged because the outbox was full.
+   */
+  dropped: number;
+}
+
+/**
+ * Options for `configureEventDelivery`. Omitted options keep their current value.
+ */
+export interface EventDeliveryOptions {
+  /**
+   * How many events are kept in memory while no listener is registered for them, 0 to 1000.
+   * Defaults to 100. Evicted events remain in the outbox (`getPendingEvents`).
+   */
+  maxRetained?: number;
+  /**
+   * Which event to drop when the buffer or a per-event limit is full. Defaults to `'dropOldest'`.
+   */
+  evictionPolicy?: 'dropOldest' | 'dropNewest';
+  /**
+   * Per event name limits within `maxRetained`, e.g. `{ alarmFired: 20 }`. Replaces the previous limits.
+   */
+  perTypeLimits?: Record<string, number>;
+  /**
+   * When above 0 (at most 5000) and an `alarmEvents` listener is registered, events raised within
+   * this many milliseconds are sent together as one `alarmEvents` payload instead of one by one.
+   * Defaults to 0.
+   */
+  batchWindowMs?: number;
+}
+
+export interface EventDeliveryConfig extends Required<EventDeliveryOptions> {
+  /**
+   * Events currently buffered waiting for a listener.
+   */
+  retained: number;
+  /**
+   * Buffered events dropped since the plugin loaded.
+   */
+  evicted: number;
+}
+
+/**
+ * Payload of the `alarmEvents` batch event.
+ */
+export interface AlarmEventBatch {
+  events: { event: string; data: AlarmEventData }[];
+}
+
+/**
+ * Payload of the `alarmsMissed` event, sent once per catch-up pass.
+ */
+export interface MissedAlarmsEvent {
+  /**
+   * What triggered the pass: a reboot, a clock or time zone change, or an alarm delivered late.
+   */
+  reason: 'boot' | 'timeChange' | 'late';
+  /**
+   * Number of missed alarms handled in this pass.
+   */
+  count: number;
+  /**
+   * IDs rung now (`missedPolicy: 'fire'`).
+   */
+  fired: string[];
+  /**
+   * IDs folded into the "missed alarms" notification.
+   */
+  collapsed: string[];
+  /**
+   * IDs dropped without ringing.
+   */
+  skipped: string[];
+  /**
+   * Sequence number in the event outbox, for `ackEvents`.
+   */
+  seq?: number;
+}
+
+/**
+ * Change summary returned by `sync`.
+ */
+export interface SyncResult {
+  /**
+   * IDs that were not scheduled before and have been set.
+   */
+  added: string[];
+  /**
+   * IDs whose `at`, `name`, `exact`, `extra` or `uiOptions` changed and have been re-set.
+   */
+  updated: string[];
+  /**
+   * IDs that were scheduled but missing from the desired set, and have been cancelled.
+   */
+  removed: string[];
+  /**
+   * IDs that could not be scheduled (e.g. missing exact alarm permission).
+   */
+  failed: string[];
+  /**
+   * IDs of one-shot alarms whose `at` has passed and that are no longer scheduled, typically
+   * because they already fired. They are not set again.
+   */
+  expired: string[];
+  /**
+   * Number of desired alarms that already matched what was scheduled.
+   */
+  unchanged: number;
+}
+
+/**
+ * Metrics from the most recent re-arm of stored alarms after a device reboot.
+ * All fields are absent if no reboot has been handled since the plugin was installed.
+ */
+export interface BootRescheduleStats {
+  /**
+   * Milliseconds from device boot until every stored alarm was re-armed.
+   */
+  bootToRearmedMs?: number;
+  /**
+   * Milliseconds spent loading the alarm store and re-arming alarms.
+   */
+  rescheduleDurationMs?: number;
+  rearmedCount?: number;
+  failedCount?: number;
+  /**
+   * Timestamp (milliseconds since epoch) when the reschedule finished.
+   */
+  completedAt?: number;
+  /**
+   * True when the alarms were re-armed on `LOCKED_BOOT_COMPLETED`, before the user unlocked.
+   */
+  beforeUnlock?: boolean;
+}
+
+/**
+ * Delivery lateness (time between an alarm's `at` and the moment the plugin received it),
+ * split by whether the device was idle (Doze) at delivery. Alarms coalesced through
+ * `toleranceMs` include their intentional delay.
+ */
+export interface DriftByIdleState {
+  active: LatencyHistogram;
+  idle: LatencyHistogram;
+}
+
+/**
+ * Wake-lock accounting for one kind of lock, accumulated across app restarts.
+ */
+export interface WakeLockKindStats {
+  acquisitions: number;
+  /**
+   * Total time held, in ms. Locks that ran into their timeout count up to the timeout.
+   */
+  heldMs: number;
+  maxHeldMs: number;
+  /**
+   * Locks released by their timeout instead of explicitly.
+   */
+  timeouts: number;
+  /**
+   * Locks held right now.
+   */
+  held: number;
+}
+
+/**
+ * `receiver`: held while the broadcast receiver runs. `alarm`: held per firing alarm until its
+ * ringing screen is drawn, its sound starts or it ends.
+ */
+export interface WakeLockStats {
+  receiver: WakeLockKindStats;
+  alarm: WakeLockKindStats;
+}
+
+export interface DriftStats {
+  exact: DriftByIdleState;
+  inexact: DriftByIdleState;
+}
+
 export interface AlarmManagerPlugin {
   /**
    * Sets a one-time alarm.
+   * Scheduling calls are queued and applied in order on a background thread; when more than 256
+   * are pending, this and the other scheduling methods reject with code `QUEUE_FULL`.
    * @param options - The configuration for the alarm.
    * @returns A promise that resolves with the ID of the set alarm.
    */
   set(options: AlarmConfig): Promise<{ alarmId: string }>;
 
+  /**
+   * Sets many alarms in a single bridge call. Entries are validated in one pass and scheduled
+   * together; an invalid entry fails on its own without affecting the rest of the batch.
+   * @param options - An object containing the alarms to set.
+   * @returns A promise that resolves with a per-alarm result, in input order.
+   */
+  setMany(options: { alarms: AlarmConfig[] }): Promise<BatchResult>;
+
+  /**
+   * Makes the scheduled alarms match `alarms` exactly. The plugin compares each entry against its
+   * own record of what is scheduled and only sets, re-sets or cancels alarms that differ, so
+   * re-pushing an unchanged set is cheap.
+   * Scheduled alarms whose IDs are not in `alarms` are cancelled.
+   * @param options - An object containing the complete desired set of alarms.
+   * @returns A promise that resolves with a summary of what changed.
+   */
+  sync(options: { alarms: AlarmConfig[] }): Promise<SyncResult>;
+
   /**
    * Cancels an existing alarm.
    * @param options - An object containing the ID of the alarm to cancel.
@@ -86,6 +502,13 @@ export interface AlarmManagerPlugin {
    */
   cancel(options: { alarmId: string }): Promise<void>;
 
+  /**
+   * Cancels many alarms in a single bridge call.
+   * @param options - An object containing the IDs of the alarms to cancel.
+   * @returns A promise that resolves with a per-alarm result, in input order. `success` is false for IDs that were not scheduled.
+   */
+  cancelMany(options: { alarmIds: string[] }): Promise<BatchResult>;
+
   /**
    * Checks if an alarm with the given ID is scheduled.
    * @param options - An object containing the ID of the alarm to check.
@@ -93,6 +516,110 @@ export interface AlarmManagerPlugin {
    */
   isScheduled(options: { alarmId: string }): Promise<{ isScheduled: boolean }>;
 
+  /**
+   * Returns every scheduled alarm, ordered by `at`. Answered from the plugin's in-memory index.
+   * For large schedules prefer `getBetween`, which pages the results.
+   * @returns A promise that resolves with all scheduled alarms.
+   */
+  getAll(): Promise<{ alarms: AlarmConfig[] }>;
+
+  /**
+   * Returns the configuration of a scheduled alarm.
+   * @param options - An object containing the ID of the alarm.
+   * @returns A promise that resolves with the alarm, or with no `alarm` field if it is not scheduled.
+   */
+  get(options: { alarmId: string }): Promise<{ alarm?: AlarmConfig }>;
+
+  /**
+   * Returns scheduled alarms whose `at` falls within a range, ordered by `at`, one page at a time.
+   * @param options - The time range and paging options.
+   * @returns A promise that resolves with one page of alarms.
+   */
+  getBetween(options: GetBetweenOptions): Promise<AlarmPage>;
+
+  /**
+   * Cancels every scheduled alarm carrying a tag, in one call. Only the matching alarms are
+   * touched, found through the plugin's tag index.
+   * @param options - The tag to cancel.
+   * @returns A promise that resolves with the number of alarms cancelled.
+   * @platform android
+   */
+  cancelByTag(options: { tag: string }): Promise<{ cancelled: number }>;
+
+  /**
+   * Returns every scheduled alarm carrying a tag, ordered by `at`.
+   * @param options - The tag to look up.
+   * @returns A promise that resolves with the tagged alarms.
+   * @platform android
+   */
+  getByTag(options: { tag: string }): Promise<{ alarms: AlarmConfig[] }>;
+
+  /**
+   * Returns how many scheduled alarms carry a tag.
+   * @param options - The tag to count.
+   * @returns A promise that resolves with the count.
+   * @platform android
+   */
+  countByTag(options: { tag: string }): Promise<{ count: number }>;
+
+  /**
+   * Returns metrics from the last time stored alarms were re-armed after a reboot.
+   * @returns A promise that resolves with the boot reschedule metrics.
+   * @platform android
+   */
+  getBootRescheduleStats(): Promise<BootRescheduleStats>;
+
+  /**
+   * Returns per-stage latency histograms for the path from the OS firing an alarm to its sound
+   * playing: service start, foreground promotion, ringing screen creation and first frame, and
+   * sound prepared/started.
+   * @returns A promise that resolves with the latency histograms.
+   * @platform android
+   */
+  getFireLatencyStats(): Promise<FireLatencyStats>;
+
+  /**
+   * Returns histograms of how late alarms were delivered relative to their `at`, split by exact
+   * vs inexact and by device idle state. Persisted across app restarts.
+   * @returns A promise that resolves with the drift histograms.
+   * @platform android
+   */
+  getDriftStats(): Promise<DriftStats>;
+
+  /**
+   * Returns how often and how long the plugin held wake locks, per kind of lock.
+   * @returns A promise that resolves with the wake-lock counters.
+   * @platform android
+   */
+  getWakeLockStats(): Promise<WakeLockStats>;
+
+  /**
+   * Returns events from the persistent outbox that have not been acknowledged yet. Every event is
+   * recorded there before it is sent, and events raised while the app's WebView was not running
+   * are replayed to listeners when the plugin loads.
+   * @param options - `afterSeq` to skip events already seen; `limit` defaults to 100, capped at 1000.
+   * @returns A promise that resolves with a page of unacknowledged events.
+   * @platform android
+   */
+  getPendingEvents(options?: { afterSeq?: number; limit?: number }): Promise<PendingEventsResult>;
+
+  /**
+   * Acknowledges every event up to and including `seq`, removing them from the outbox.
+   * @param options - The highest sequence number the app has consumed.
+   * @returns A promise that resolves with the number of events removed.
+   * @platform android
+   */
+  ackEvents(options: { seq: number }): Promise<{ removed: number }>;
+
+  /**
+   * Configures how events reach listeners: the bounded buffer for events nobody listens for yet,
+   * and the optional `alarmEvents` batch window. Settings are persisted.
+   * @param options - The settings to change.
+   * @returns A promise that resolves with the effective settings and buffer counters.
+   * @platform android
+   */
+  configureEventDelivery(options: EventDeliveryOptions): Promise<EventDeliveryConfig>;
+
   /**
    * Checks the status of a given permission.
    * @param options - An object containing the name of the permission to check.
@@ -162,4 +689,18 @@ export interface AlarmManagerPlugin {
    */
   addListener(eventName: string, listenerFunc: (eventData: AlarmEventData) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
 
+  /**
+   * Listens for batches of alarm events, sent instead of individual events when `batchWindowMs`
+   * is set with `configureEventDelivery`.
+   * @platform android
+   */
+  addListener(eventName: 'alarmEvents', listenerFunc: (batch: AlarmEventBatch) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Listens for the summary of missed alarms handled after a reboot, a clock change or a late
+   * delivery, sent once per pass instead of one event per alarm.
+   * @platform android
+   */
+  addListener(eventName: 'alarmsMissed', listenerFunc: (event: MissedAlarmsEvent) => void): Promise<PluginListenerHandle> & PluginListenerHandle;
+
 }
@@ -1,6 +1,6 @@
 import { registerPlugin, PluginListenerHandle } from '@capacitor/core';
 
-import type { AlarmManagerPlugin, AlarmConfig, PermissionName, PermissionStatusResult } from './definitions';
+import type { AlarmManagerPlugin, AlarmConfig, AlarmPage, BatchResult, BootRescheduleStats, DriftStats, EventDeliveryConfig, EventDeliveryOptions, FireLatencyStats, GetBetweenOptions, PendingEventsResult, PermissionName, PermissionStatusResult, SyncResult, WakeLockStats } from './definitions';
 
 const unimplementedWarning = (platform: 'web' | 'ios', methodName: string) =>
   `Warning: Method AlarmManager.${methodName} was called on ${platform}, but the '@mahermaker/android-alarm-manager' plugin is Android-only. This method will have no effect or return a default value.`;
@@ -20,16 +20,92 @@ class UnimplementedAlarmManager implements AlarmManagerPlugin {
     return Promise.reject(unimplementedError(this.platform, 'set'));
   }
 
+  setMany(_options: { alarms: AlarmConfig[]; }): Promise<BatchResult> {
+    console.warn(unimplementedWarning(this.platform, 'setMany'));
+    return Promise.reject(unimplementedError(this.platform, 'setMany'));
+  }
+
+  sync(_options: { alarms: AlarmConfig[]; }): Promise<SyncResult> {
+    console.warn(unimplementedWarning(this.platform, 'sync'));
+    return Promise.reject(unimplementedError(this.platform, 'sync'));
+  }
+
   cancel(_options: { alarmId: string; }): Promise<void> {
     console.warn(unimplementedWarning(this.platform, 'cancel'));
     return Promise.reject(unimplementedError(this.platform, 'cancel'));
   }
 
+  cancelMany(_options: { alarmIds: string[]; }): Promise<BatchResult> {
+    console.warn(unimplementedWarning(this.platform, 'cancelMany'));
+    return Promise.reject(unimplementedError(this.platform, 'cancelMany'));
+  }
+
+  cancelByTag(_options: { tag: string; }): Promise<{ cancelled: number; }> {
+    console.warn(unimplementedWarning(this.platform, 'cancelByTag'));
+    return Promise.reject(unimplementedError(this.platform, 'cancelByTag'));
+  }
+
   isScheduled(_options: { alarmId: string; }): Promise<{ isScheduled: boolean; }> {
     console.warn(unimplementedWarning(this.platform, 'isScheduled'));
     return Promise.resolve({ isScheduled: false }); // Benign default
   }
 
+  getAll(): Promise<{ alarms: AlarmConfig[]; }> {
+    console.warn(unimplementedWarning(this.platform, 'getAll'));
+    return Promise.resolve({ alarms: [] }); // Benign default
+  }
+
+  get(_options: { alarmId: string; }): Promise<{ alarm?: AlarmConfig; }> {
+    console.warn(unimplementedWarning(this.platform, 'get'));
+    return Promise.resolve({}); // Benign default
+  }
+
+  getBetween(_options: GetBetweenOptions): Promise<AlarmPage> {
+    console.warn(unimplementedWarning(this.platform, 'getBetween'));
+    return Promise.resolve({ alarms: [] }); // Benign default
+  }
+
+  getByTag(_options: { tag: string; }): Promise<{ alarms: AlarmConfig[]; }> {
+    console.warn(unimplementedWarning(this.platform, 'getByTag'));
+    return Promise.resolve({ alarms: [] }); // Benign default
+  }
+
+  countByTag(_options: { tag: string; }): Promise<{ count: number; }> {
+    console.warn(unimplementedWarning(this.platform, 'countByTag'));
+    return Promise.resolve({ count: 0 }); // Benign default
+  }
+
+  getBootRescheduleStats(): Promise<BootRescheduleStats> {
+    console.warn(unimplementedWarning(this.platform, 'getBootRescheduleStats'));
+    return Promise.resolve({});
+  }
+
+  getFireLatencyStats(): Promise<FireLatencyStats> {
+    return Promise.reject(unimplementedError(this.platform, 'getFireLatencyStats'));
+  }
+
+  getDriftStats(): Promise<DriftStats> {
+    return Promise.reject(unimplementedError(this.platform, 'getDriftStats'));
+  }
+
+  getWakeLockStats(): Promise<WakeLockStats> {
+    return Promise.reject(unimplementedError(this.platform, 'getWakeLockStats'));
+  }
+
+  getPendingEvents(_options?: { afterSeq?: number; limit?: number }): Promise<PendingEventsResult> {
+    return Promise.reject(unimplementedError(this.platform, 'getPendingEvents'));
+  }
+
+  ackEvents(_options: { seq: number }): Promise<{ removed: number }> {
+    console.warn(unimplementedWarning(this.platform, 'ackEvents'));
+    return Promise.reject(unimplementedError(this.platform, 'ackEvents'));
+  }
+
+  configureEventDelivery(_options: EventDeliveryOptions): Promise<EventDeliveryConfig> {
+    console.warn(unimplementedWarning(this.platform, 'configureEventDelivery'));
+    return Promise.reject(unimplementedError(this.platform, 'configureEventDelivery'));
+  }
+
   // New generic permission methods
   checkPermissions(options: { permission: PermissionName; }): Promise<PermissionStatusResult> {
     console.warn(unimplementedWarning(this.platform, `checkPermissions for ${options.permission} (Android-only method)`));